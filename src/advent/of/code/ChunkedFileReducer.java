@@ -0,0 +1,153 @@
+package advent.of.code;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+public class ChunkedFileReducer<R> {
+    protected static final int CHUNKS_PER_WORKER = 4;
+    protected static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    @FunctionalInterface
+    public interface ChunkReader<R> {
+        R read(FileChannel channel, long start, long end) throws IOException;
+    }
+
+    protected FileChannel channel;
+    protected int workers;
+
+    // When set chunks only end on blank lines, so groups of lines are never split
+    protected boolean alignOnBlankLines;
+
+    public ChunkedFileReducer(FileChannel channel, int workers) {
+        this(channel, workers, false);
+    }
+
+    public ChunkedFileReducer(FileChannel channel, int workers, boolean alignOnBlankLines) {
+        if (workers < 1) {
+            throw new RuntimeException("workers should be at least 1, not " + workers);
+        }
+        this.channel = channel;
+        this.workers = workers;
+        this.alignOnBlankLines = alignOnBlankLines;
+    }
+
+    public R reduce(ChunkReader<R> reader, BinaryOperator<R> merge) throws IOException {
+        long[] boundaries = getChunkBoundaries(workers * CHUNKS_PER_WORKER);
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            return pool.invoke(new ChunkTask(boundaries, 0, boundaries.length - 1, reader, merge));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    protected long[] getChunkBoundaries(int chunks) throws IOException {
+        final long size = channel.size();
+        long[] boundaries = new long[chunks + 1];
+        boundaries[chunks] = size;
+        for (int i = 1; i < chunks; i++) {
+            final long offset = Math.max(boundaries[i - 1], size * i / chunks);
+            boundaries[i] = alignOnBlankLines ? findGroupBoundary(offset, size) : findLineStart(offset, size);
+        }
+        return boundaries;
+    }
+
+    // Finds the start of the first line at or after offset
+    protected long findLineStart(long offset, long size) throws IOException {
+        if (offset == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        long position = offset - 1;
+        while (position < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++, position++) {
+                if (buffer.get(i) == '\n') {
+                    return position + 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    // Finds the start of the first blank line at or after offset
+    protected long findGroupBoundary(long offset, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        boolean lineIsBlank = false;
+        long lineStart = offset;
+        long position = offset;
+
+        if (offset > 0) {
+            ByteBuffer single = ByteBuffer.allocate(1);
+            channel.read(single, offset - 1);
+            lineIsBlank = single.get(0) == '\n';
+        }
+
+        while (position < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++, position++) {
+                final byte b = buffer.get(i);
+                if (b == '\n') {
+                    if (lineIsBlank) {
+                        return lineStart;
+                    }
+                    lineIsBlank = true;
+                    lineStart = position + 1;
+                } else if (b != '\r') {
+                    lineIsBlank = false;
+                }
+            }
+        }
+        return size;
+    }
+
+    protected class ChunkTask extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        protected long[] boundaries;
+        protected int from;
+        protected int to;
+        protected ChunkReader<R> reader;
+        protected BinaryOperator<R> merge;
+
+        public ChunkTask(long[] boundaries, int from, int to, ChunkReader<R> reader, BinaryOperator<R> merge) {
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.reader = reader;
+            this.merge = merge;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from == 1) {
+                try {
+                    return reader.read(channel, boundaries[from], boundaries[to]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            final int mid = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(boundaries, from, mid, reader, merge);
+            left.fork();
+            R right = new ChunkTask(boundaries, mid, to, reader, merge).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+}
@@ -1,30 +1,64 @@
 package advent.of.code;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.OptionalInt;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class DayEight {
     public static class Forrest {
-        protected ArrayList<Integer> treeMap = new ArrayList<>();
+        // Tree heights as digit values 0-9, row by row
+        protected byte[] treeMap = new byte[0];
+        protected int size = 0;
         int widthOfForest = 0;
 
         public Forrest addRow(String row) {
-            if (widthOfForest != 0 && row.length() != widthOfForest) {
+            byte[] bytes = row.getBytes(StandardCharsets.US_ASCII);
+            return addRow(bytes, 0, bytes.length);
+        }
+
+        public Forrest addRow(byte[] row, int offset, int length) {
+            if (widthOfForest != 0 && length != widthOfForest) {
                 throw new RuntimeException("Faulty input, each line must be of the same length");
             }
-            widthOfForest = row.length();
-            row.chars().forEach(treeMap::add);
+            widthOfForest = length;
+            if (size + length > treeMap.length) {
+                treeMap = Arrays.copyOf(treeMap, Math.max(size + length, treeMap.length * 2));
+            }
+            System.arraycopy(row, offset, treeMap, size, length);
+            for (int i = size; i < size + length; i++) {
+                treeMap[i] -= '0';
+                if (treeMap[i] < 0 || treeMap[i] > 9) {
+                    throw new RuntimeException("Faulty input, tree heights must be digits");
+                }
+            }
+            size += length;
             return this;
         }
 
         public int getTreeHeightAt(int x, int y) {
             final int idx = y*widthOfForest + x;
-            return treeMap.get(idx);
+            return treeMap[idx];
+        }
+
+        public Forrest setTreeHeightAt(int x, int y, int height) {
+            if (height < 0 || height > 9) {
+                throw new RuntimeException("Tree height should be in range 0-9, not " + height);
+            }
+            treeMap[y*widthOfForest + x] = (byte) height;
+            return this;
         }
 
         public int getWidth() {
@@ -32,21 +66,19 @@ public class DayEight {
         }
 
         public int getHeight() {
-            return treeMap.size() / widthOfForest;
+            return widthOfForest == 0 ? 0 : size / widthOfForest;
+        }
+
+        public int getSize() {
+            return size;
         }
     }
 
-    public static class ForrestMap<T> {
+    public static class ForrestMap {
         protected Forrest forrest;
 
-        protected ArrayList<T> map;
-
-        public ForrestMap(Forrest forrest, T initValue) {
+        public ForrestMap(Forrest forrest) {
             this.forrest = forrest;
-            final int width = forrest.getHeight();
-            final int height = forrest.getHeight();
-            map = new ArrayList<>();
-            IntStream.range(0, width*height).forEach(i -> map.add(initValue));
         }
 
         public int getIndexOfCoordinate(int x, int y) {
@@ -58,152 +90,532 @@ public class DayEight {
             final int y = (idx - x) / forrest.getWidth();
             return new int[] {x, y};
         }
-
-        protected ForrestMap<T> setAt(int x, int y, T value) {
-            final int idx = getIndexOfCoordinate(x, y);
-            map.set(idx, value);
-            return this;
-        }
     }
 
-    public static class VisibilityMap extends ForrestMap<Boolean> {
-        protected int currentMaxima = Integer.MIN_VALUE;
+    public static class VisibilityMap extends ForrestMap {
+        protected static final VarHandle MAP_WORD = MethodHandles.arrayElementVarHandle(long[].class);
+
+        // One bit per tree, set when the tree is visible from outside the forrest
+        protected long[] map;
+
+        // Rows and columns are swept concurrently, neighbouring rows can share a word so bits are set atomically
+        protected boolean parallel;
 
         public VisibilityMap(Forrest forrest) {
-            super(forrest, false);
-            final int width = forrest.getHeight();
+            this(forrest, false);
+        }
+
+        public VisibilityMap(Forrest forrest, boolean parallel) {
+            super(forrest);
+            this.parallel = parallel;
+            map = new long[(forrest.getSize() + 63) >>> 6];
+            final int width = forrest.getWidth();
             final int height = forrest.getHeight();
-            IntStream.range(0, height)
+            lines(height)
                     .forEach(y -> {
                         fillRow(y, true);
                         fillRow(y, false);
                     });
-            IntStream.range(0, width)
+            lines(width)
                     .forEach(x -> {
                         fillCol(x, true);
                         fillCol(x, false);
                     });
         }
 
+        protected IntStream lines(int count) {
+            return parallel ? IntStream.range(0, count).parallel() : IntStream.range(0, count);
+        }
+
+        protected void setVisibleAt(int x, int y) {
+            final int idx = getIndexOfCoordinate(x, y);
+            if (parallel) {
+                MAP_WORD.getAndBitwiseOr(map, idx >>> 6, 1L << idx);
+            } else {
+                map[idx >>> 6] |= 1L << idx;
+            }
+        }
+
+        public boolean isVisibleAt(int x, int y) {
+            final int idx = getIndexOfCoordinate(x, y);
+            return (map[idx >>> 6] & (1L << idx)) != 0;
+        }
+
         protected void fillRow(int y, boolean forward) {
             final int width = forrest.getWidth();
-            currentMaxima = Integer.MIN_VALUE;
-            IntStream.range(0, forrest.getWidth())
-                    .map(x -> forward ? x : width - 1 - x)
-                    .forEach(x -> {
-                        final int currentHeight = forrest.getTreeHeightAt(y, x);
-                        if (currentHeight > currentMaxima) {
-                            setAt(x, y, true);
-                            currentMaxima = currentHeight;
-                        }
-                    });
+            int currentMaxima = Integer.MIN_VALUE;
+            for (int i = 0; i < width; i++) {
+                final int x = forward ? i : width - 1 - i;
+                final int currentHeight = forrest.getTreeHeightAt(x, y);
+                if (currentHeight > currentMaxima) {
+                    setVisibleAt(x, y);
+                    currentMaxima = currentHeight;
+                }
+            }
         }
 
         protected void fillCol(int x, boolean forward) {
             final int height = forrest.getHeight();
-            currentMaxima = Integer.MIN_VALUE;
-            IntStream.range(0, forrest.getWidth())
-                    .map(y -> forward ? y : height - 1 - y)
-                    .forEach(y -> {
-                        final int currentHeight = forrest.getTreeHeightAt(y, x);
-                        if (currentHeight > currentMaxima) {
-                            setAt(x, y, true);
-                            currentMaxima = currentHeight;
-                        }
-                    });
+            int currentMaxima = Integer.MIN_VALUE;
+            for (int i = 0; i < height; i++) {
+                final int y = forward ? i : height - 1 - i;
+                final int currentHeight = forrest.getTreeHeightAt(x, y);
+                if (currentHeight > currentMaxima) {
+                    setVisibleAt(x, y);
+                    currentMaxima = currentHeight;
+                }
+            }
         }
 
         @Override
         public String toString() {
             StringBuilder stringBuilder = new StringBuilder();
-            IntStream.range(0, map.size())
+            IntStream.range(0, forrest.getSize())
                     .forEach(idx -> {
                         if (idx % (forrest.getWidth()) == 0) {
                             stringBuilder.append("\n");
                         }
-                        stringBuilder.append(map.get(idx) ? '1' : '0');
+                        stringBuilder.append((map[idx >>> 6] & (1L << idx)) != 0 ? '1' : '0');
                     });
             return stringBuilder.toString();
         }
 
         public int countVisibleTrees() {
-            return IntStream.range(0, map.size())
-                    .mapToObj(i -> map.get(i))
-                    .mapToInt(v -> v ? 1 : 0)
-                    .sum();
+            LongStream words = Arrays.stream(map);
+            return (parallel ? words.parallel() : words).mapToInt(Long::bitCount).sum();
         }
     }
 
-    public static class ScenicScoreMap extends ForrestMap<Integer> {
-        public ScenicScoreMap(Forrest forrest) {
-            super(forrest, 0);
-            IntStream.range(0, map.size())
-                    .forEach(idx -> {
-                        final int[] xy = getCoordinateOfIndex(idx);
-                        final int scenicScore = calculateScenicScoreAt(xy[0], xy[1]);
-                        setAt(xy[0], xy[1], scenicScore);
-                    });
-        }
-
-        protected int calculateScenicScoreAt(int x, int y) {
-            final int currentHeight = forrest.getTreeHeightAt(x, y);
+    public static class ScenicScoreMap extends ForrestMap {
+        protected long[] map;
 
-            OptionalInt down = IntStream.range(y + 1, forrest.getHeight())
-                    .filter(yp -> forrest.getTreeHeightAt(x, yp) >= currentHeight)
-                    .findFirst();
+        // Both sweeps of a row or column run in the same task, so no two tasks touch the same score at once
+        protected boolean parallel;
 
-            OptionalInt right = IntStream.range(x + 1, forrest.getWidth())
-                    .filter(xp -> forrest.getTreeHeightAt(xp, y) >= currentHeight)
-                    .findFirst();
+        public ScenicScoreMap(Forrest forrest) {
+            this(forrest, false);
+        }
 
-            OptionalInt up = IntStream.range(1, y)
-                    .map(yp -> y - yp)
-                    .filter(yp -> forrest.getTreeHeightAt(x, yp) >= currentHeight)
-                    .findFirst();
+        public ScenicScoreMap(Forrest forrest, boolean parallel) {
+            super(forrest);
+            this.parallel = parallel;
+            map = new long[forrest.getSize()];
+            Arrays.fill(map, 1);
+            final int width = forrest.getWidth();
+            final int height = forrest.getHeight();
+            lines(height)
+                    .forEach(y -> {
+                        sweep(y * width, 1, width);
+                        sweep(y * width + width - 1, -1, width);
+                    });
+            lines(width)
+                    .forEach(x -> {
+                        sweep(x, width, height);
+                        sweep((height - 1) * width + x, -width, height);
+                    });
+        }
 
-            OptionalInt left = IntStream.range(1, x)
-                    .map(xp -> x - xp)
-                    .filter(xp -> forrest.getTreeHeightAt(xp, y) >= currentHeight)
-                    .findFirst();
+        protected IntStream lines(int count) {
+            return parallel ? IntStream.range(0, count).parallel() : IntStream.range(0, count);
+        }
 
-            final int downLength = down.isEmpty() ? forrest.getHeight() - y - 1: down.getAsInt() - y;
-            final int rightLength = right.isEmpty() ? forrest.getWidth() - x - 1 : right.getAsInt() - x;
-            final int upLength = up.isEmpty() ? y : y - up.getAsInt();
-            final int leftLength = left.isEmpty() ? x : x - left.getAsInt();
+        // Multiplies each score on the line by how far its tree sees back towards the start of the line.
+        // lastIndexOfHeight[h] is the last step a tree of height h was passed, a tree sees back to the
+        // nearest of those at or above its own height, or to the edge at step 0.
+        protected void sweep(int start, int stride, int count) {
+            final byte[] heights = forrest.treeMap;
+            final int[] lastIndexOfHeight = new int[10];
+            for (int step = 0, idx = start; step < count; step++, idx += stride) {
+                final int currentHeight = heights[idx];
+                int blocker = 0;
+                for (int h = currentHeight; h < 10; h++) {
+                    blocker = Math.max(blocker, lastIndexOfHeight[h]);
+                }
+                map[idx] *= step - blocker;
+                lastIndexOfHeight[currentHeight] = step;
+            }
+        }
 
-            return downLength * rightLength * upLength * leftLength;
+        public long getScenicScoreAt(int x, int y) {
+            return map[getIndexOfCoordinate(x, y)];
         }
 
         @Override
         public String toString() {
             StringBuilder stringBuilder = new StringBuilder();
-            IntStream.range(0, map.size()).forEach(idx -> {
+            IntStream.range(0, map.length).forEach(idx -> {
                 if ((idx % forrest.getWidth()) == 0) {
                     stringBuilder.append("\n");
                 }
-                stringBuilder.append(String.format("%06d ", map.get(idx)));
+                stringBuilder.append(String.format("%06d ", map[idx]));
             });
             return stringBuilder.toString();
         }
 
-        public int getMaxScenicScore() {
-            return map.stream().mapToInt(i -> (int)i).max().getAsInt();
+        public long getMaxScenicScore() {
+            LongStream scores = Arrays.stream(map);
+            return (parallel ? scores.parallel() : scores).max().getAsLong();
+        }
+    }
+
+    public static class IncrementalForrestIndex extends ForrestMap {
+        // A tree's visibility and scenic score only depend on its own row and column, so both are kept split
+        // into a row part (left and right) and a column part (up and down) that are refreshed independently
+        protected long[] visibleInRow;
+        protected long[] visibleInCol;
+        protected long[] rowScores;
+        protected long[] colScores;
+        protected int visibleTreeCount = 0;
+
+        // Max segment tree over the scenic scores, leaves start at index size
+        protected long[] maxTree;
+        protected int size;
+
+        // Set while the constructor fills every line, the count and tree are then built once at the end
+        protected boolean building = true;
+
+        // Scratch space for one line, sized for the longer side
+        protected boolean[] lineVisible;
+        protected long[] lineScores;
+
+        public IncrementalForrestIndex(Forrest forrest) {
+            super(forrest);
+            size = forrest.getSize();
+            visibleInRow = new long[(size + 63) >>> 6];
+            visibleInCol = new long[(size + 63) >>> 6];
+            rowScores = new long[size];
+            colScores = new long[size];
+            maxTree = new long[2 * Math.max(size, 1)];
+            lineVisible = new boolean[Math.max(forrest.getWidth(), forrest.getHeight())];
+            lineScores = new long[lineVisible.length];
+
+            final int width = forrest.getWidth();
+            final int height = forrest.getHeight();
+            IntStream.range(0, height).forEach(y -> refreshLine(y * width, 1, width, visibleInRow, rowScores));
+            IntStream.range(0, width).forEach(x -> refreshLine(x, width, height, visibleInCol, colScores));
+            for (int idx = 0; idx < size; idx++) {
+                maxTree[size + idx] = rowScores[idx] * colScores[idx];
+                if (isVisible(idx)) {
+                    visibleTreeCount++;
+                }
+            }
+            for (int node = size - 1; node > 0; node--) {
+                maxTree[node] = Math.max(maxTree[2 * node], maxTree[2 * node + 1]);
+            }
+            building = false;
+        }
+
+        // Re-measures one tree, only its row and column are swept again, O((width + height) log n)
+        public IncrementalForrestIndex setTreeHeightAt(int x, int y, int height) {
+            forrest.setTreeHeightAt(x, y, height);
+            final int width = forrest.getWidth();
+            refreshLine(y * width, 1, width, visibleInRow, rowScores);
+            refreshLine(x, width, forrest.getHeight(), visibleInCol, colScores);
+            return this;
+        }
+
+        protected boolean isVisible(int idx) {
+            return ((visibleInRow[idx >>> 6] | visibleInCol[idx >>> 6]) & (1L << idx)) != 0;
+        }
+
+        public boolean isVisibleAt(int x, int y) {
+            return isVisible(getIndexOfCoordinate(x, y));
+        }
+
+        public long getScenicScoreAt(int x, int y) {
+            return maxTree[size + getIndexOfCoordinate(x, y)];
+        }
+
+        public int countVisibleTrees() {
+            return visibleTreeCount;
+        }
+
+        public long getMaxScenicScore() {
+            return size == 0 ? 0 : maxTree[1];
+        }
+
+        // Sweeps a line both ways into the scratch arrays, then applies the cells that changed
+        protected void refreshLine(int start, int stride, int count, long[] visibleBits, long[] scores) {
+            final byte[] heights = forrest.treeMap;
+            final int[] lastIndexOfHeight = new int[10];
+            int lineMax = -1;
+            for (int step = 0, idx = start; step < count; step++, idx += stride) {
+                final int h = heights[idx];
+                int blocker = 0;
+                for (int k = h; k < 10; k++) {
+                    blocker = Math.max(blocker, lastIndexOfHeight[k]);
+                }
+                lineScores[step] = step - blocker;
+                lineVisible[step] = h > lineMax;
+                lineMax = Math.max(lineMax, h);
+                lastIndexOfHeight[h] = step;
+            }
+
+            Arrays.fill(lastIndexOfHeight, count - 1);
+            lineMax = -1;
+            for (int step = count - 1, idx = start + (count - 1) * stride; step >= 0; step--, idx -= stride) {
+                final int h = heights[idx];
+                int blocker = count - 1;
+                for (int k = h; k < 10; k++) {
+                    blocker = Math.min(blocker, lastIndexOfHeight[k]);
+                }
+                lineScores[step] *= blocker - step;
+                lineVisible[step] |= h > lineMax;
+                lineMax = Math.max(lineMax, h);
+                lastIndexOfHeight[h] = step;
+            }
+
+            for (int step = 0, idx = start; step < count; step++, idx += stride) {
+                final boolean wasVisible = isVisible(idx);
+                if (lineVisible[step]) {
+                    visibleBits[idx >>> 6] |= 1L << idx;
+                } else {
+                    visibleBits[idx >>> 6] &= ~(1L << idx);
+                }
+
+                if (building) {
+                    scores[idx] = lineScores[step];
+                    continue;
+                }
+
+                visibleTreeCount += (isVisible(idx) ? 1 : 0) - (wasVisible ? 1 : 0);
+                if (scores[idx] != lineScores[step]) {
+                    scores[idx] = lineScores[step];
+                    updateScore(idx);
+                }
+            }
+        }
+
+        protected void updateScore(int idx) {
+            int node = size + idx;
+            maxTree[node] = rowScores[idx] * colScores[idx];
+            for (node >>>= 1; node > 0; node >>>= 1) {
+                maxTree[node] = Math.max(maxTree[2 * node], maxTree[2 * node + 1]);
+            }
+        }
+    }
+
+    public static class MappedGridEngine {
+        // Rows are processed in bands of about this many bytes, each band mapped on its own
+        protected static final int TILE_BYTES = 1 << 20;
+
+        // Marks a spilled down distance whose tree is also visible from the bottom edge
+        protected static final int VISIBLE_FROM_BOTTOM = 1 << 31;
+
+        protected FileChannel channel;
+        protected long fileSize;
+        protected int width;
+        protected int stride;
+        protected int height;
+        protected int bandRows;
+
+        protected long visibleTreeCount = 0;
+        protected long maxScenicScore = 0;
+
+        public MappedGridEngine(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            readDimensions();
+            bandRows = (int) Math.max(1, TILE_BYTES / Math.max(stride, 4L * width));
+        }
+
+        protected void readDimensions() throws IOException {
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, Integer.MAX_VALUE));
+            while (head.hasRemaining() && head.get() != '\n') {
+                width++;
+            }
+            stride = head.position();
+            if (width > 0 && head.get(width - 1) == '\r') {
+                width--;
+            }
+            if (stride == 0) {
+                height = 0;
+                return;
+            }
+            // Every row is width bytes plus a line break of stride - width bytes, except that the last
+            // row may lack its line break, so adding the break length back rounds up to whole rows
+            height = (int) ((fileSize + stride - width) / stride);
+        }
+
+        public MappedGridEngine run() throws IOException {
+            if (width == 0 || height == 0) {
+                return this;
+            }
+            Path spillPath = Files.createTempFile("forrest", ".spill");
+            try (FileChannel spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                sweepUp(spill);
+                sweepDown(spill);
+            } finally {
+                Files.deleteIfExists(spillPath);
+            }
+            return this;
+        }
+
+        protected MappedByteBuffer mapBand(int firstRow, int rows) throws IOException {
+            final long start = (long) firstRow * stride;
+            final long length = Math.min(fileSize - start, (long) rows * stride);
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+
+        protected int heightAt(MappedByteBuffer band, int row, int x) {
+            final int h = band.get(row * stride + x) - '0';
+            if (h < 0 || h > 9) {
+                throw new RuntimeException("Faulty input, tree heights must be digits and lines of the same length");
+            }
+            return h;
+        }
+
+        // First pass, bottom band to top band: spills each tree's downward viewing distance and bottom visibility.
+        // nextRowOfHeight[10x + h] is the nearest row below with a tree of height h in column x, or the last row.
+        protected void sweepUp(FileChannel spill) throws IOException {
+            final int[] nextRowOfHeight = new int[10 * width];
+            final int[] colMaxBelow = new int[width];
+            Arrays.fill(nextRowOfHeight, height - 1);
+            Arrays.fill(colMaxBelow, -1);
+
+            for (int bandEnd = height; bandEnd > 0; bandEnd -= bandRows) {
+                final int bandStart = Math.max(0, bandEnd - bandRows);
+                MappedByteBuffer band = mapBand(bandStart, bandEnd - bandStart);
+                IntBuffer spillBand = spill.map(
+                        FileChannel.MapMode.READ_WRITE,
+                        4L * bandStart * width,
+                        4L * (bandEnd - bandStart) * width
+                ).asIntBuffer();
+
+                for (int y = bandEnd - 1; y >= bandStart; y--) {
+                    final int row = y - bandStart;
+                    for (int x = 0; x < width; x++) {
+                        final int h = heightAt(band, row, x);
+                        int blocker = height - 1;
+                        for (int k = h; k < 10; k++) {
+                            blocker = Math.min(blocker, nextRowOfHeight[10 * x + k]);
+                        }
+                        int spilled = blocker - y;
+                        if (h > colMaxBelow[x]) {
+                            spilled |= VISIBLE_FROM_BOTTOM;
+                            colMaxBelow[x] = h;
+                        }
+                        spillBand.put(row * width + x, spilled);
+                        nextRowOfHeight[10 * x + h] = y;
+                    }
+                }
+            }
+        }
+
+        // Second pass, top band to bottom band: adds the up, left and right directions and combines all four
+        protected void sweepDown(FileChannel spill) throws IOException {
+            final int[] lastRowOfHeight = new int[10 * width];
+            final int[] colMaxAbove = new int[width];
+            Arrays.fill(colMaxAbove, -1);
+
+            final int[] heights = new int[width];
+            final int[] rightDistances = new int[width];
+            final boolean[] visibleFromRight = new boolean[width];
+            final int[] lastIndexOfHeight = new int[10];
+
+            for (int bandStart = 0; bandStart < height; bandStart += bandRows) {
+                final int bandEnd = Math.min(height, bandStart + bandRows);
+                MappedByteBuffer band = mapBand(bandStart, bandEnd - bandStart);
+                IntBuffer spillBand = spill.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        4L * bandStart * width,
+                        4L * (bandEnd - bandStart) * width
+                ).asIntBuffer();
+
+                for (int y = bandStart; y < bandEnd; y++) {
+                    final int row = y - bandStart;
+
+                    // Right to left along the row, the row itself always fits in one band
+                    Arrays.fill(lastIndexOfHeight, width - 1);
+                    int rowMax = -1;
+                    for (int x = width - 1; x >= 0; x--) {
+                        final int h = heightAt(band, row, x);
+                        heights[x] = h;
+                        int blocker = width - 1;
+                        for (int k = h; k < 10; k++) {
+                            blocker = Math.min(blocker, lastIndexOfHeight[k]);
+                        }
+                        rightDistances[x] = blocker - x;
+                        visibleFromRight[x] = h > rowMax;
+                        rowMax = Math.max(rowMax, h);
+                        lastIndexOfHeight[h] = x;
+                    }
+
+                    // Left to right along the row, combined with the column state and the spilled first pass
+                    Arrays.fill(lastIndexOfHeight, 0);
+                    rowMax = -1;
+                    for (int x = 0; x < width; x++) {
+                        final int h = heights[x];
+                        int leftBlocker = 0;
+                        for (int k = h; k < 10; k++) {
+                            leftBlocker = Math.max(leftBlocker, lastIndexOfHeight[k]);
+                        }
+                        int upBlocker = 0;
+                        for (int k = h; k < 10; k++) {
+                            upBlocker = Math.max(upBlocker, lastRowOfHeight[10 * x + k]);
+                        }
+                        final int spilled = spillBand.get(row * width + x);
+
+                        final boolean visible = h > rowMax
+                                || visibleFromRight[x]
+                                || h > colMaxAbove[x]
+                                || (spilled & VISIBLE_FROM_BOTTOM) != 0;
+                        if (visible) {
+                            visibleTreeCount++;
+                        }
+
+                        final long scenicScore = (long) (x - leftBlocker)
+                                * rightDistances[x]
+                                * (y - upBlocker)
+                                * (spilled & ~VISIBLE_FROM_BOTTOM);
+                        maxScenicScore = Math.max(maxScenicScore, scenicScore);
+
+                        rowMax = Math.max(rowMax, h);
+                        colMaxAbove[x] = Math.max(colMaxAbove[x], h);
+                        lastIndexOfHeight[h] = x;
+                        lastRowOfHeight[10 * x + h] = y;
+                    }
+                }
+            }
+        }
+
+        public long getVisibleTreeCount() {
+            return visibleTreeCount;
+        }
+
+        public long getMaxScenicScore() {
+            return maxScenicScore;
         }
     }
 
     public static void main(String[] args) {
+        // Optional arguments: --parallel sweeps rows and columns on the common fork/join pool,
+        // --mapped works on the memory-mapped input file without loading it into a Forrest
+        final List<String> options = Arrays.asList(args).subList(1, args.length);
+        final boolean parallel = options.contains("--parallel");
+        if (options.contains("--mapped")) {
+            try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+                MappedGridEngine engine = new MappedGridEngine(channel).run();
+                System.out.println("Part 1: " + engine.getVisibleTreeCount());
+                System.out.println("Part 2: " + engine.getMaxScenicScore());
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
+
         try (Stream<String> stringStream = Files.lines(Paths.get(args[0]))) {
             Forrest forrest = new Forrest();
             stringStream.forEach(forrest::addRow);
 
             // Part 1
-            VisibilityMap visibilityMap = new VisibilityMap(forrest);
+            VisibilityMap visibilityMap = new VisibilityMap(forrest, parallel);
             // Uncomment below to output the visibility map for sanity check
             // System.out.println(visibilityMap);
             System.out.println("Part 1: " + visibilityMap.countVisibleTrees());
 
             // Part 2
-            ScenicScoreMap scoreMap = new ScenicScoreMap(forrest);
+            ScenicScoreMap scoreMap = new ScenicScoreMap(forrest, parallel);
             // Uncomment below output the score map for sanity check
             // System.out.println(scoreMap);
             System.out.println("Part 2: " + scoreMap.getMaxScenicScore());
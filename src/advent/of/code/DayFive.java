@@ -1,23 +1,107 @@
 package advent.of.code;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.stream.IntStream;
+import java.util.SplittableRandom;
 import java.util.stream.Stream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class DayFive {
+    public static class CrateStack {
+        protected char[] crates = new char[16];
+        protected int size = 0;
+
+        public int size() {
+            return size;
+        }
+
+        public char peek() {
+            return crates[size - 1];
+        }
+
+        public char get(int i) {
+            return crates[i];
+        }
+
+        public CrateStack push(char crate) {
+            ensureCapacity(size + 1);
+            crates[size++] = crate;
+            return this;
+        }
+
+        public CrateStack copy() {
+            CrateStack copy = new CrateStack();
+            copy.crates = Arrays.copyOf(crates, Math.max(size, 1));
+            copy.size = size;
+            return copy;
+        }
+
+        public CrateStack reverse() {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                final char crate = crates[i];
+                crates[i] = crates[j];
+                crates[j] = crate;
+            }
+            return this;
+        }
+
+        protected void ensureCapacity(int capacity) {
+            if (capacity > crates.length) {
+                crates = Arrays.copyOf(crates, Math.max(capacity, crates.length * 2));
+            }
+        }
+
+        public void moveTo(CrateStack to, int quantity, boolean inBulk) {
+            if (quantity > size) {
+                throw new RuntimeException("Can not move " + quantity + " crates from a stack of " + size);
+            }
+            if (to == this) {
+                // Moving crates onto the stack they came from leaves it unchanged in both modes
+                return;
+            }
+            to.ensureCapacity(to.size + quantity);
+            final int start = size - quantity;
+            if (inBulk) {
+                System.arraycopy(crates, start, to.crates, to.size, quantity);
+            } else {
+                for (int i = 0; i < quantity; i++) {
+                    to.crates[to.size + i] = crates[size - 1 - i];
+                }
+            }
+            to.size += quantity;
+            size = start;
+        }
+
+        @Override
+        public String toString() {
+            return new String(crates, 0, size);
+        }
+    }
+
     public static class Stacks {
-        protected ArrayList<LinkedList<String>> stacks = new ArrayList<>();
+        protected ArrayList<CrateStack> stacks = new ArrayList<>();
 
         protected Pattern commandPattern = Pattern.compile("move (\\d+) from (\\d+) to (\\d+)");
 
         protected boolean canMoveMultipleCrates;
 
+        // Layout lines are read top down, crates are pushed in that order and the stacks flipped once before use
+        protected boolean layoutIsReversed = false;
+
         public void setCanMoveMultipleCrates(boolean canMoveMultipleCrates) {
             this.canMoveMultipleCrates = canMoveMultipleCrates;
         }
@@ -31,22 +115,64 @@ public class DayFive {
             return this;
         }
 
-        public ArrayList<LinkedList<String>> getStacks() {
+        public Stacks copy() {
+            Stacks copy = new Stacks();
+            stacks.forEach(stack -> copy.stacks.add(stack.copy()));
+            copy.canMoveMultipleCrates = canMoveMultipleCrates;
+            copy.layoutIsReversed = layoutIsReversed;
+            return copy;
+        }
+
+        public ArrayList<CrateStack> getCrateStacks() {
+            finishLayout();
             return stacks;
         }
 
+        public ArrayList<LinkedList<String>> getStacks() {
+            ArrayList<LinkedList<String>> result = new ArrayList<>();
+            for (CrateStack stack : getCrateStacks()) {
+                LinkedList<String> crates = new LinkedList<>();
+                for (int i = 0; i < stack.size(); i++) {
+                    crates.addLast(String.valueOf(stack.get(i)));
+                }
+                result.add(crates);
+            }
+            return result;
+        }
+
+        public String getTopCrates() {
+            StringBuilder topCrates = new StringBuilder();
+            for (CrateStack stack : getCrateStacks()) {
+                if (stack.size() > 0) {
+                    topCrates.append(stack.peek());
+                }
+            }
+            return topCrates.toString();
+        }
+
         protected void handleAddition(String line) {
-            IntStream.range(0, (line.length()) / 4 + 1)
-                    .forEach(i -> {
-                        if (stacks.size() < i + 1) {
-                            stacks.add(new LinkedList());
-                        }
+            if (!layoutIsReversed) {
+                // Flip back to top down order, so layout read after moves still goes under existing crates
+                stacks.forEach(CrateStack::reverse);
+                layoutIsReversed = true;
+            }
+            for (int i = 0; i < line.length() / 4 + 1; i++) {
+                if (stacks.size() < i + 1) {
+                    stacks.add(new CrateStack());
+                }
 
-                        String c = new String(new char[] {line.charAt(i * 4 + 1)});
-                        if (c.matches("[A-Z]")) {
-                            this.stacks.get(i).addFirst(c);
-                        }
-                    });
+                final char c = line.charAt(i * 4 + 1);
+                if (c >= 'A' && c <= 'Z') {
+                    this.stacks.get(i).push(c);
+                }
+            }
+        }
+
+        protected void finishLayout() {
+            if (layoutIsReversed) {
+                stacks.forEach(CrateStack::reverse);
+                layoutIsReversed = false;
+            }
         }
 
         protected void handleMove(String command) {
@@ -64,52 +190,339 @@ public class DayFive {
         }
 
         protected void moveQuantityFromTo(int quantity, int from, int to) {
-            IntStream.range(0, quantity)
-                    .forEach(i -> moveFromTo(from, to));
+            finishLayout();
+            stacks.get(from).moveTo(stacks.get(to), quantity, false);
         }
 
         protected void moveQuantityInBulkFromTo(int quantity, int from, int to) {
-            LinkedList<String> toMove = new LinkedList<>();
+            finishLayout();
+            stacks.get(from).moveTo(stacks.get(to), quantity, true);
+        }
+
+        protected void moveFromTo(int from, int to) {
+            moveQuantityFromTo(1, from, to);
+        }
+    }
+
+    public static class CompiledMoveLog {
+        // Marks a compiled move log file, followed by the size and modification time of the input it was
+        // compiled from, the move count and three ints per move
+        protected static final int MAGIC = 0x44354D57;
+        protected static final int HEADER_SIZE = 4 + 8 + 8 + 4;
+
+        // Packed as quantity, from, to for each move, with zero based stack indices
+        protected int[] moves = new int[3 * 64];
+        protected int moveCount = 0;
 
-            IntStream.range(0, quantity)
-                    .forEach(i -> toMove.addLast(stacks.get(from).removeLast()));
+        // Size and modification time in milliseconds of the input the moves were read from
+        protected long sourceSize = -1;
+        protected long sourceModified = -1;
 
-            IntStream.range(0, quantity)
-                    .forEach(i -> stacks.get(to).addLast(toMove.removeLast()));
+        public static CompiledMoveLog load(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                    throw new RuntimeException(path + " is not a compiled move log");
+                }
+                CompiledMoveLog log = new CompiledMoveLog();
+                log.sourceSize = buffer.getLong();
+                log.sourceModified = buffer.getLong();
+                log.moveCount = buffer.getInt();
+                IntBuffer packedMoves = buffer.asIntBuffer();
+                if (packedMoves.remaining() != 3 * log.moveCount) {
+                    throw new RuntimeException(path + " is truncated, expected " + log.moveCount + " moves");
+                }
+                log.moves = new int[3 * log.moveCount];
+                packedMoves.get(log.moves);
+                return log;
+            }
         }
 
-        protected void moveFromTo(int from, int to) {
-            stacks.get(to).addLast(
-                    stacks.get(from).removeLast()
-            );
+        // Whether path holds a compiled move log whose recorded input size and modification time match source
+        public static boolean isCompiledFrom(Path path, Path source) throws IOException {
+            if (!Files.exists(path)) {
+                return false;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                return Files.size(path) >= HEADER_SIZE
+                        && in.readInt() == MAGIC
+                        && in.readLong() == Files.size(source)
+                        && in.readLong() == Files.getLastModifiedTime(source).toMillis();
+            }
+        }
+
+        public CompiledMoveLog setSource(Path source) throws IOException {
+            sourceSize = Files.size(source);
+            sourceModified = Files.getLastModifiedTime(source).toMillis();
+            return this;
+        }
+
+        public CompiledMoveLog save(Path path) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceModified);
+                out.writeInt(moveCount);
+                for (int i = 0; i < 3 * moveCount; i++) {
+                    out.writeInt(moves[i]);
+                }
+            }
+            return this;
+        }
+
+        public CompiledMoveLog addMove(String command) {
+            int[] values = new int[3];
+            int field = -1;
+            boolean inNumber = false;
+            for (int i = 0; i < command.length(); i++) {
+                final char c = command.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    if (!inNumber) {
+                        if (++field > 2) {
+                            break;
+                        }
+                        inNumber = true;
+                    }
+                    values[field] = values[field] * 10 + (c - '0');
+                } else {
+                    inNumber = false;
+                }
+            }
+            if (field != 2) {
+                throw new RuntimeException("Invalid move: " + command);
+            }
+            return addMove(values[0], values[1] - 1, values[2] - 1);
+        }
+
+        public CompiledMoveLog addMove(int quantity, int from, int to) {
+            if (3 * moveCount + 3 > moves.length) {
+                moves = Arrays.copyOf(moves, moves.length * 2);
+            }
+            moves[3 * moveCount] = quantity;
+            moves[3 * moveCount + 1] = from;
+            moves[3 * moveCount + 2] = to;
+            moveCount++;
+            return this;
+        }
+
+        public int getMoveCount() {
+            return moveCount;
+        }
+
+        public int getMaxQuantity() {
+            int maxQuantity = 0;
+            for (int i = 0; i < 3 * moveCount; i += 3) {
+                maxQuantity = Math.max(maxQuantity, moves[i]);
+            }
+            return maxQuantity;
+        }
+
+        // Fails on the first move that refers to a stack outside of the layout, before anything is moved
+        public CompiledMoveLog checkStackCount(int stackCount) {
+            for (int i = 0; i < 3 * moveCount; i++) {
+                if (i % 3 != 0 && (moves[i] < 0 || moves[i] >= stackCount)) {
+                    throw new RuntimeException("Move " + (i / 3 + 1) + " refers to stack " + (moves[i] + 1)
+                            + ", the layout only has " + stackCount + " stacks");
+                }
+            }
+            return this;
+        }
+
+        public Stacks replay(Stacks stacks) {
+            ArrayList<CrateStack> crateStacks = stacks.getCrateStacks();
+            checkStackCount(crateStacks.size());
+            final boolean inBulk = stacks.canMoveMultipleCrates;
+            for (int i = 0; i < 3 * moveCount; i += 3) {
+                crateStacks.get(moves[i + 1]).moveTo(crateStacks.get(moves[i + 2]), moves[i], inBulk);
+            }
+            return stacks;
+        }
+    }
+
+    public static class RopeStacks {
+        // Implicit treap node, the in order traversal of a tree is its stack from bottom to top
+        protected static class Node {
+            protected char crate;
+            protected int priority;
+            protected int size = 1;
+            protected boolean reversed = false;
+            protected Node left;
+            protected Node right;
+
+            protected Node(char crate, int priority) {
+                this.crate = crate;
+                this.priority = priority;
+            }
+        }
+
+        protected ArrayList<Node> roots = new ArrayList<>();
+        protected SplittableRandom random = new SplittableRandom(5);
+
+        // Results of the last split
+        protected Node splitLeft;
+        protected Node splitRight;
+
+        public RopeStacks(Stacks layout) {
+            for (CrateStack stack : layout.getCrateStacks()) {
+                Node root = null;
+                for (int i = 0; i < stack.size(); i++) {
+                    root = merge(root, new Node(stack.get(i), random.nextInt()));
+                }
+                roots.add(root);
+            }
+        }
+
+        protected static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        protected static void pushDown(Node node) {
+            if (node.reversed) {
+                Node left = node.left;
+                node.left = node.right;
+                node.right = left;
+                if (node.left != null) {
+                    node.left.reversed = !node.left.reversed;
+                }
+                if (node.right != null) {
+                    node.right.reversed = !node.right.reversed;
+                }
+                node.reversed = false;
+            }
+        }
+
+        protected static Node update(Node node) {
+            node.size = 1 + size(node.left) + size(node.right);
+            return node;
+        }
+
+        protected static Node merge(Node left, Node right) {
+            if (left == null) {
+                return right;
+            }
+            if (right == null) {
+                return left;
+            }
+            if (left.priority > right.priority) {
+                pushDown(left);
+                left.right = merge(left.right, right);
+                return update(left);
+            }
+            pushDown(right);
+            right.left = merge(left, right.left);
+            return update(right);
+        }
+
+        // Splits node into its first count crates, stored in splitLeft, and the rest, stored in splitRight
+        protected void split(Node node, int count) {
+            if (node == null) {
+                splitLeft = null;
+                splitRight = null;
+                return;
+            }
+            pushDown(node);
+            if (size(node.left) < count) {
+                split(node.right, count - size(node.left) - 1);
+                node.right = splitLeft;
+                splitLeft = update(node);
+            } else {
+                split(node.left, count);
+                node.left = splitRight;
+                splitRight = update(node);
+            }
+        }
+
+        public RopeStacks move(int quantity, int from, int to, boolean inBulk) {
+            final int size = size(roots.get(from));
+            if (quantity > size) {
+                throw new RuntimeException("Can not move " + quantity + " crates from a stack of " + size);
+            }
+            if (from == to) {
+                return this;
+            }
+            split(roots.get(from), size - quantity);
+            roots.set(from, splitLeft);
+            Node moved = splitRight;
+            if (moved != null && !inBulk) {
+                moved.reversed = !moved.reversed;
+            }
+            roots.set(to, merge(roots.get(to), moved));
+            return this;
+        }
+
+        public RopeStacks replay(CompiledMoveLog log, boolean inBulk) {
+            log.checkStackCount(roots.size());
+            for (int i = 0; i < 3 * log.moveCount; i += 3) {
+                move(log.moves[i], log.moves[i + 1], log.moves[i + 2], inBulk);
+            }
+            return this;
+        }
+
+        public String getTopCrates() {
+            StringBuilder topCrates = new StringBuilder();
+            for (Node node : roots) {
+                if (node == null) {
+                    continue;
+                }
+                pushDown(node);
+                while (node.right != null) {
+                    node = node.right;
+                    pushDown(node);
+                }
+                topCrates.append(node.crate);
+            }
+            return topCrates.toString();
         }
     }
 
+    // Moves of more crates than this are spliced in a RopeStacks instead of copied between arrays
+    public static final int ROPE_QUANTITY_THRESHOLD = 1 << 16;
+
     public static void main(String[] args) {
-        // Part 1
-        try (Stream<String> stringStream = Files.lines(Paths.get(args[0]))) {
-            Stacks commandStacks = new Stacks();
-            commandStacks.setCanMoveMultipleCrates(false);
-            stringStream.forEach(line -> commandStacks.execute(line));
-            System.out.print("Part 1: ");
-            commandStacks.getStacks().stream()
-                    .forEach(stack -> System.out.print(stack.size() > 0 ? stack.getLast() : ""));
-            System.out.println();
+        // Optional second argument is a compiled move log, it is written on the first run and replayed after that
+        // until the input changes
+        Path inputPath = Paths.get(args[0]);
+        Path compiledPath = args.length > 1 ? Paths.get(args[1]) : null;
+
+        Stacks layout = new Stacks();
+        CompiledMoveLog moveLog = new CompiledMoveLog();
+        try (Stream<String> stringStream = Files.lines(inputPath)) {
+            final boolean useCompiled = compiledPath != null && CompiledMoveLog.isCompiledFrom(compiledPath, inputPath);
+            if (useCompiled) {
+                stringStream.takeWhile(line -> !line.contains("move")).forEach(layout::execute);
+                moveLog = CompiledMoveLog.load(compiledPath);
+            } else {
+                final CompiledMoveLog compiler = moveLog;
+                stringStream.forEach(line -> {
+                    if (line.contains("move")) {
+                        compiler.addMove(line);
+                    } else {
+                        layout.execute(line);
+                    }
+                });
+                if (compiledPath != null) {
+                    moveLog.setSource(inputPath).save(compiledPath);
+                }
+            }
         } catch (IOException e) {
             System.out.println(e.getMessage());
+            return;
         }
 
-        // Part 2
-        try (Stream<String> stringStream = Files.lines(Paths.get(args[0]))) {
-            Stacks commandStacks = new Stacks();
-            commandStacks.setCanMoveMultipleCrates(true);
-            stringStream.forEach(line -> commandStacks.execute(line));
-            System.out.print("Part 2: ");
-            commandStacks.getStacks().stream()
-                    .forEach(stack -> System.out.print(stack.size() > 0 ? stack.getLast() : ""));
-            System.out.println();
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
+        if (moveLog.getMaxQuantity() > ROPE_QUANTITY_THRESHOLD) {
+            System.out.println("Part 1: " + new RopeStacks(layout).replay(moveLog, false).getTopCrates());
+            System.out.println("Part 2: " + new RopeStacks(layout).replay(moveLog, true).getTopCrates());
+            return;
         }
+
+        // Part 1
+        Stacks commandStacks = layout.copy();
+        commandStacks.setCanMoveMultipleCrates(false);
+        System.out.println("Part 1: " + moveLog.replay(commandStacks).getTopCrates());
+
+        // Part 2
+        commandStacks = layout.copy();
+        commandStacks.setCanMoveMultipleCrates(true);
+        System.out.println("Part 2: " + moveLog.replay(commandStacks).getTopCrates());
     }
 }
@@ -1,9 +1,15 @@
 package advent.of.code;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
-import java.util.stream.Stream;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class DayFour {
     public static class Range {
@@ -44,47 +50,204 @@ public class DayFour {
         }
 
         public boolean hasFullOverlap() {
-            return rangeA.contains(rangeB) || rangeB.contains(rangeA);
+            return hasFullOverlap(rangeA.getStart(), rangeA.getEnd(), rangeB.getStart(), rangeB.getEnd());
         }
 
         public boolean hasOverlap() {
-            return rangeA.overlaps(rangeB) || rangeB.overlaps(rangeA);
+            return hasOverlap(rangeA.getStart(), rangeA.getEnd(), rangeB.getStart(), rangeB.getEnd());
+        }
+
+        public static boolean hasFullOverlap(int startA, int endA, int startB, int endB) {
+            return startA >= startB && endA <= endB
+                    || startB >= startA && endB <= endA;
+        }
+
+        public static boolean hasOverlap(int startA, int endA, int startB, int endB) {
+            return startA >= startB && startA <= endB
+                    || endA >= startB && endA <= endB
+                    || startB >= startA && startB <= endA
+                    || endB >= startA && endB <= endA;
         }
     }
 
-    public static void main(String[] args) {
-        try (Stream<String> stringStream = Files.lines(Paths.get(args[0]))) {
-            int fullOverlapCount = (int) stringStream
-                    .map(line -> line.split(","))
-                    .map(ranges -> {
-                        String[] rangeA = ranges[0].split("-");
-                        String[] rangeB = ranges[1].split("-");
-                        return new RangePair(
-                                new Range(Integer.valueOf(rangeA[0]), Integer.valueOf(rangeA[1])),
-                                new Range(Integer.valueOf(rangeB[0]), Integer.valueOf(rangeB[1]))
-                        );
-                    })
-                    .filter(pair -> pair.hasFullOverlap())
-                    .count();
-            System.out.println("Part 1: " + fullOverlapCount);
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
+    public static class IntervalIndex {
+        // Ranges sorted by start, viewed as an implicit balanced tree rooted at the middle of each slice
+        protected Range[] ranges;
+        protected int[] maxEnds;
+
+        public IntervalIndex(Collection<Range> ranges) {
+            this.ranges = ranges.toArray(new Range[0]);
+            Arrays.sort(this.ranges, Comparator.comparingInt(Range::getStart));
+            this.maxEnds = new int[this.ranges.length];
+            buildMaxEnds(0, this.ranges.length);
+        }
+
+        protected int buildMaxEnds(int lo, int hi) {
+            if (lo >= hi) {
+                return Integer.MIN_VALUE;
+            }
+            final int mid = (lo + hi) >>> 1;
+            maxEnds[mid] = Math.max(
+                    ranges[mid].getEnd(),
+                    Math.max(buildMaxEnds(lo, mid), buildMaxEnds(mid + 1, hi))
+            );
+            return maxEnds[mid];
+        }
+
+        public int size() {
+            return ranges.length;
+        }
+
+        public List<Range> findOverlapping(Range range) {
+            return query(range.getEnd(), range.getStart());
+        }
+
+        public List<Range> findContaining(Range range) {
+            return query(range.getStart(), range.getEnd());
+        }
+
+        public List<Range> findContaining(int point) {
+            return query(point, point);
+        }
+
+        // All ranges with start <= maxStart and end >= minEnd, each query above is of this form
+        public List<Range> query(int maxStart, int minEnd) {
+            List<Range> result = new ArrayList<>();
+            query(0, ranges.length, maxStart, minEnd, result::add);
+            return result;
+        }
+
+        protected void query(int lo, int hi, int maxStart, int minEnd, Consumer<Range> consumer) {
+            if (lo >= hi) {
+                return;
+            }
+            final int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] < minEnd) {
+                return;
+            }
+            query(lo, mid, maxStart, minEnd, consumer);
+            if (ranges[mid].getStart() > maxStart) {
+                return;
+            }
+            if (ranges[mid].getEnd() >= minEnd) {
+                consumer.accept(ranges[mid]);
+            }
+            query(mid + 1, hi, maxStart, minEnd, consumer);
+        }
+
+        public long countOverlappingPairs() {
+            // Each event packs the coordinate with a low bit of 0 for a start and 1 for an end,
+            // so starts sort before ends at the same coordinate, as the ranges are inclusive
+            long[] events = new long[2 * ranges.length];
+            for (int i = 0; i < ranges.length; i++) {
+                events[2 * i] = (long) ranges[i].getStart() << 1;
+                events[2 * i + 1] = ((long) ranges[i].getEnd() << 1) | 1;
+            }
+            Arrays.sort(events);
+
+            long pairs = 0;
+            long active = 0;
+            for (long event : events) {
+                if ((event & 1) == 0) {
+                    pairs += active;
+                    active++;
+                } else {
+                    active--;
+                }
+            }
+            return pairs;
+        }
+    }
+
+    public static class ByteStreamPairCounter {
+        protected long fullOverlapCount = 0;
+        protected long overlapCount = 0;
+
+        // Bounds of the current line read so far, kept between calls to accept
+        protected int[] bounds = new int[4];
+        protected int field = 0;
+        protected boolean fieldHasDigits = false;
+
+        public ByteStreamPairCounter count(FileChannel channel) throws IOException {
+            return count(channel, 0, channel.size());
+        }
+
+        public ByteStreamPairCounter count(FileChannel channel, long start, long end) throws IOException {
+            MappedByteScanner.scan(channel, start, end, this::accept, this::endOfInput);
+            return this;
+        }
+
+        protected void accept(byte b) {
+            if (b >= '0' && b <= '9') {
+                bounds[field] = bounds[field] * 10 + (b - '0');
+                fieldHasDigits = true;
+            } else if (b == '-' || b == ',') {
+                if (!fieldHasDigits || field == 3 || (b == '-') != (field % 2 == 0)) {
+                    throw new RuntimeException("Faulty input, each line must be of the form a-b,c-d");
+                }
+                field++;
+                fieldHasDigits = false;
+            } else if (b == '\n') {
+                if (field > 0 || fieldHasDigits) {
+                    endOfLine();
+                }
+            } else if (b != '\r') {
+                throw new RuntimeException("Faulty input, unexpected character " + (char) b);
+            }
+        }
+
+        protected void endOfInput() {
+            if (field > 0 || fieldHasDigits) {
+                endOfLine();
+            }
         }
 
-        try (Stream<String> stringStream = Files.lines(Paths.get(args[0]))) {
-            int partialOverlapCount = (int) stringStream
-                    .map(line -> line.split(","))
-                    .map(ranges -> {
-                        String[] rangeA = ranges[0].split("-");
-                        String[] rangeB = ranges[1].split("-");
-                        return new RangePair(
-                                new Range(Integer.valueOf(rangeA[0]), Integer.valueOf(rangeA[1])),
-                                new Range(Integer.valueOf(rangeB[0]), Integer.valueOf(rangeB[1]))
-                        );
-                    })
-                    .filter(pair -> pair.hasOverlap())
-                    .count();
-            System.out.println("Part 2: " + partialOverlapCount);
+        protected void endOfLine() {
+            if (field != 3 || !fieldHasDigits) {
+                throw new RuntimeException("Faulty input, each line must be of the form a-b,c-d");
+            }
+            final int startA = bounds[0];
+            final int endA = bounds[1];
+            final int startB = bounds[2];
+            final int endB = bounds[3];
+
+            if (RangePair.hasFullOverlap(startA, endA, startB, endB)) {
+                fullOverlapCount++;
+            }
+            if (RangePair.hasOverlap(startA, endA, startB, endB)) {
+                overlapCount++;
+            }
+
+            Arrays.fill(bounds, 0);
+            field = 0;
+            fieldHasDigits = false;
+        }
+
+        public ByteStreamPairCounter merge(ByteStreamPairCounter other) {
+            fullOverlapCount += other.fullOverlapCount;
+            overlapCount += other.overlapCount;
+            return this;
+        }
+
+        public long getFullOverlapCount() {
+            return fullOverlapCount;
+        }
+
+        public long getOverlapCount() {
+            return overlapCount;
+        }
+    }
+
+    public static void main(String[] args) {
+        try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+            // Optional second argument sets the number of workers counting chunks of lines in parallel
+            final int workers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+            ByteStreamPairCounter counter = workers > 1
+                    ? new ChunkedFileReducer<ByteStreamPairCounter>(channel, workers)
+                            .reduce((c, start, end) -> new ByteStreamPairCounter().count(c, start, end), ByteStreamPairCounter::merge)
+                    : new ByteStreamPairCounter().count(channel);
+            System.out.println("Part 1: " + counter.getFullOverlapCount());
+            System.out.println("Part 2: " + counter.getOverlapCount());
         } catch (IOException e) {
             System.out.println(e.getMessage());
         }
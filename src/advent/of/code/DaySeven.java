@@ -1,14 +1,18 @@
 package advent.of.code;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Optional;
-import java.util.OptionalInt;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.OptionalLong;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class DaySeven {
@@ -16,8 +20,8 @@ public class DaySeven {
         boolean isFile();
         boolean isDirectory();
 
-        int getSize();
-        FileSystemEntity setSize(int size);
+        long getSize();
+        FileSystemEntity setSize(long size);
 
         String getName();
         FileSystemEntity setName(String name);
@@ -28,12 +32,12 @@ public class DaySeven {
         ArrayList<FileSystemEntity> getChildren();
         FileSystemEntity addChild(FileSystemEntity entity);
 
-        int getSizeOfChildren();
+        long getSizeOfChildren();
     }
 
     static abstract public class AbstractFileSystemEntity implements FileSystemEntity {
         protected String name;
-        protected int size = 0;
+        protected long size = 0;
 
         protected FileSystemEntity parent;
 
@@ -43,12 +47,12 @@ public class DaySeven {
         abstract public boolean isDirectory();
 
         @Override
-        public int getSize() {
+        public long getSize() {
             return size;
         }
 
         @Override
-        public FileSystemEntity setSize(int size) {
+        public FileSystemEntity setSize(long size) {
             this.size = size;
             return this;
         }
@@ -79,10 +83,21 @@ public class DaySeven {
         abstract public FileSystemEntity addChild(FileSystemEntity entity);
 
         @Override
-        abstract public int getSizeOfChildren();
+        abstract public long getSizeOfChildren();
     }
 
     public static class File extends AbstractFileSystemEntity {
+        // Directory whose cached size includes this file, set once the file is added to it
+        protected Directory countedIn;
+
+        @Override
+        public FileSystemEntity setSize(long size) {
+            if (countedIn != null) {
+                countedIn.propagateSizeChange(size - this.size);
+            }
+            return super.setSize(size);
+        }
+
         @Override
         public boolean isFile() {
             return true;
@@ -104,7 +119,7 @@ public class DaySeven {
         }
 
         @Override
-        public int getSizeOfChildren() {
+        public long getSizeOfChildren() {
             throw new RuntimeException("A file can not have any children");
         }
     }
@@ -112,6 +127,12 @@ public class DaySeven {
     public static class Directory extends AbstractFileSystemEntity {
         protected ArrayList<FileSystemEntity> children = new ArrayList<>();
 
+        // Same entries as children, indexed by name
+        protected HashMap<String, FileSystemEntity> childrenByName = new HashMap<>();
+
+        // Total size of all files below this directory, kept up to date as entries are added
+        protected long sizeOfChildren = 0;
+
         @Override
         public boolean isFile() {
             return false;
@@ -124,25 +145,110 @@ public class DaySeven {
 
         @Override
         public FileSystemEntity addChild(FileSystemEntity entity) {
-            getChildren().add(entity);
+            if (!attachChild(entity)) {
+                return this;
+            }
+            if (entity instanceof File) {
+                ((File) entity).countedIn = this;
+                propagateSizeChange(entity.getSize());
+            } else if (entity instanceof Directory) {
+                propagateSizeChange(entity.getSizeOfChildren());
+            }
             return this;
         }
 
+        // Adds the entity without updating any cached size, ParallelSizeAggregator fills them in afterwards
+        protected boolean attachChild(FileSystemEntity entity) {
+            if (childrenByName.putIfAbsent(entity.getName(), entity) != null) {
+                // Listing the same directory again must not count its entries twice
+                return false;
+            }
+            getChildren().add(entity);
+            return true;
+        }
+
+        protected void propagateSizeChange(long delta) {
+            for (FileSystemEntity dir = this; dir instanceof Directory; dir = dir.getParent()) {
+                ((Directory) dir).sizeOfChildren += delta;
+            }
+        }
+
         @Override
-        public int getSizeOfChildren() {
-            return getChildren().stream().mapToInt(entity -> {
-                if (entity.isFile()) {
-                    return entity.getSize();
-                } else if (entity.isDirectory()) {
-                    return entity.getSizeOfChildren();
-                }
-                return 0;
-            }).sum();
+        public long getSizeOfChildren() {
+            return sizeOfChildren;
         }
 
         public ArrayList<FileSystemEntity> getChildren() {
             return children;
         }
+
+        public FileSystemEntity getChild(String name) {
+            return childrenByName.get(name);
+        }
+    }
+
+    public static class ParallelSizeAggregator extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        // Subdirectories with at least this many direct children get their own task, the rest are summed inline
+        protected static final int FORK_THRESHOLD = 1 << 10;
+
+        protected Directory directory;
+
+        public ParallelSizeAggregator(Directory directory) {
+            this.directory = directory;
+        }
+
+        // Recomputes the cached size of every directory below and including root in one pass, e.g. after the
+        // listing was loaded with deferred sizes. Files are linked to their directory so later size changes propagate
+        public static long aggregate(Directory root, int workers) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                return pool.invoke(new ParallelSizeAggregator(root));
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        @Override
+        protected Long compute() {
+            // Directories summed by this task in pre-order, walked with an explicit stack so deep trees can not overflow it
+            ArrayList<Directory> directories = new ArrayList<>();
+            ArrayList<ParallelSizeAggregator> forked = new ArrayList<>();
+            ArrayDeque<Directory> pending = new ArrayDeque<>();
+            pending.push(directory);
+            while (!pending.isEmpty()) {
+                Directory dir = pending.pop();
+                directories.add(dir);
+                for (FileSystemEntity child : dir.getChildren()) {
+                    if (child instanceof Directory) {
+                        if (child.getChildren().size() >= FORK_THRESHOLD) {
+                            ParallelSizeAggregator task = new ParallelSizeAggregator((Directory) child);
+                            task.fork();
+                            forked.add(task);
+                        } else {
+                            pending.push((Directory) child);
+                        }
+                    } else if (child instanceof File) {
+                        ((File) child).countedIn = dir;
+                    }
+                }
+            }
+            for (ParallelSizeAggregator task : forked) {
+                task.join();
+            }
+
+            // Every subdirectory comes after its parent in pre-order, so walking backwards sums it first
+            for (int i = directories.size() - 1; i >= 0; i--) {
+                Directory dir = directories.get(i);
+                long size = 0;
+                for (FileSystemEntity child : dir.getChildren()) {
+                    size += child.isDirectory() ? child.getSizeOfChildren() : child.getSize();
+                }
+                dir.sizeOfChildren = size;
+            }
+            return directory.sizeOfChildren;
+        }
     }
 
     public static class DirectoryFilter {
@@ -153,10 +259,11 @@ public class DaySeven {
             this.directory = directory;
         }
 
-        public DirectoryFilter filterDirectoriesBySize(int sizeRangeStart, int sizeRangeEnd) {
+        public DirectoryFilter filterDirectoriesBySize(long sizeRangeStart, long sizeRangeEnd) {
             for (FileSystemEntity dir : directory.getChildren()) {
                 if (dir instanceof Directory) {
-                    if (dir.getSizeOfChildren() >= sizeRangeStart && dir.getSizeOfChildren() <= sizeRangeEnd) {
+                    final long size = dir.getSizeOfChildren();
+                    if (size >= sizeRangeStart && size <= sizeRangeEnd) {
                         filteredChildren.add(dir);
                     }
                     (new DirectoryFilter((Directory) dir)).setFilterResult(getFilterResult())
@@ -178,37 +285,42 @@ public class DaySeven {
     }
 
     public static class CommandLineInterface {
-        Pattern changeDirectory = Pattern.compile("\\$\\scd\\s(.+)");
-        Pattern fileRecord = Pattern.compile("(\\d+)\\s(.+)");
-        Pattern directoryRecord = Pattern.compile("dir\\s(.+)");
-
-        Pattern[] patterns = new Pattern[] {
-                changeDirectory,
-                fileRecord,
-                directoryRecord
-        };
         Directory workingDirectory;
         Directory root;
 
+        // When set entries are added without updating cached sizes, see ParallelSizeAggregator
+        boolean deferSizes = false;
+
+        public CommandLineInterface(Directory root) {
+            this.root = root;
+            this.workingDirectory = root;
+        }
+
         public CommandLineInterface(Directory root, Directory workingDirectory, String command) {
             this.workingDirectory = workingDirectory;
             this.root = root;
+            execute(command);
+        }
 
-            Matcher match = getMatchForPattern(command);
-
-            if (match == null) {
-                return;
+        public CommandLineInterface execute(String command) {
+            if (command.isEmpty()) {
+                return this;
             }
 
-            Pattern pattern = match.pattern();
-
-            if (pattern == changeDirectory) {
-                handleDirectoryChange(match);
-            } else if (pattern == fileRecord) {
-                handleFileRecord(match);
-            } else if (pattern == directoryRecord) {
-                handleDirectoryRecord(match);
+            final char first = command.charAt(0);
+            if (first == '$') {
+                if (command.startsWith("$ cd ")) {
+                    handleDirectoryChange(command.substring(5));
+                }
+            } else if (first >= '0' && first <= '9') {
+                final int separator = command.indexOf(' ');
+                if (separator > 0) {
+                    handleFileRecord(Long.parseLong(command.substring(0, separator)), command.substring(separator + 1));
+                }
+            } else if (command.startsWith("dir ")) {
+                handleDirectoryRecord(command.substring(4));
             }
+            return this;
         }
 
         public Directory getWorkingDirectory() {
@@ -224,77 +336,550 @@ public class DaySeven {
             return this;
         }
 
-        protected void handleDirectoryChange(Matcher match) {
-            String directoryName = match.group(1);
+        public CommandLineInterface setDeferSizes(boolean deferSizes) {
+            this.deferSizes = deferSizes;
+            return this;
+        }
+
+        protected void addToWorkingDirectory(FileSystemEntity entity) {
+            if (deferSizes) {
+                getWorkingDirectory().attachChild(entity);
+            } else {
+                getWorkingDirectory().addChild(entity);
+            }
+        }
 
+        protected void handleDirectoryChange(String directoryName) {
             if (directoryName.equals("/")) {
                 setWorkingDirectory(getRoot());
+                return;
             }
 
             if (directoryName.equals("..")) {
                 setWorkingDirectory((Directory) getWorkingDirectory().getParent());
+                return;
             }
 
-            Optional<FileSystemEntity> foundDir = this.getWorkingDirectory().children.stream()
-                    .filter(dir -> dir instanceof Directory && dir.getName().equals(directoryName))
-                    .findFirst();
+            FileSystemEntity foundDir = getWorkingDirectory().getChild(directoryName);
 
-            if (foundDir.isPresent()) {
-                setWorkingDirectory((Directory)foundDir.get());
+            if (foundDir instanceof Directory) {
+                setWorkingDirectory((Directory) foundDir);
             }
         }
 
-        protected void handleFileRecord(Matcher match) {
-            int fileSize = Integer.valueOf(match.group(1));
-            String fileName = match.group(2);
+        protected void handleFileRecord(long fileSize, String fileName) {
             File file = (File) (new File()).setParent(getWorkingDirectory()).setName(fileName).setSize(fileSize);
-            getWorkingDirectory().addChild(file);
+            addToWorkingDirectory(file);
         }
 
-        protected void handleDirectoryRecord(Matcher match) {
-            String directoryName = match.group(1);
+        protected void handleDirectoryRecord(String directoryName) {
             Directory dir = (Directory) (new Directory()).setName(directoryName).setParent(getWorkingDirectory());
-            getWorkingDirectory().addChild(dir);
+            addToWorkingDirectory(dir);
+        }
+    }
+
+    public static class CompactFileSystem {
+        protected static final int ROOT = 0;
+        protected static final int NONE = -1;
+
+        protected int count = 0;
+
+        // Entry columns, an entry is always added after its parent so parent[i] < i for every i > 0
+        protected int[] parent = new int[16];
+        protected int[] firstChild = new int[16];
+        protected int[] lastChild = new int[16];
+        protected int[] nextSibling = new int[16];
+        protected int[] nameOffset = new int[16];
+        protected int[] nameLength = new int[16];
+        protected long[] sizes = new long[16];
+        protected long[] directoryFlags = new long[1];
+
+        // UTF-8 bytes of every distinct name, each stored once
+        protected byte[] nameArena = new byte[256];
+        protected int nameArenaSize = 0;
+
+        // Open addressing table of distinct names, arena offset + 1 and byte length per slot, keyed by the name bytes
+        protected int[] nameTableOffsets = new int[32];
+        protected int[] nameTableLengths = new int[32];
+        protected int distinctNames = 0;
+
+        // Open addressing table of entry index + 1, keyed by parent and interned name offset and compared on name length too
+        protected int[] childTable = new int[32];
+
+        // Total size of all files below each directory, valid while sizesAreStale is false
+        protected long[] subtreeSizes = new long[0];
+        protected boolean sizesAreStale = true;
+
+        public CompactFileSystem() {
+            add(NONE, "/", 0, true);
+        }
+
+        public int getRootIndex() {
+            return ROOT;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public boolean isDirectory(int index) {
+            return (directoryFlags[index >>> 6] & (1L << index)) != 0;
+        }
+
+        public int getParentIndex(int index) {
+            return parent[index];
+        }
+
+        public String getName(int index) {
+            return new String(nameArena, nameOffset[index], nameLength[index], StandardCharsets.UTF_8);
+        }
+
+        public long getSize(int index) {
+            return sizes[index];
+        }
+
+        public int getChildIndex(int parentIndex, String name) {
+            final int slot = findName(name.getBytes(StandardCharsets.UTF_8));
+            return nameTableOffsets[slot] == 0
+                    ? NONE
+                    : findChild(parentIndex, nameTableOffsets[slot] - 1, nameTableLengths[slot]);
+        }
+
+        public int addDirectory(int parentIndex, String name) {
+            return add(parentIndex, name, 0, true);
+        }
+
+        public int addFile(int parentIndex, String name, long size) {
+            return add(parentIndex, name, size, false);
+        }
+
+        // Returns the index of the new entry, or of the existing entry if the parent already has one by that name
+        protected int add(int parentIndex, String name, long size, boolean isDirectory) {
+            final long interned = intern(name);
+            final int offset = (int) (interned >>> 32);
+            final int length = (int) interned;
+            if (parentIndex != NONE) {
+                final int existing = findChild(parentIndex, offset, length);
+                if (existing != NONE) {
+                    return existing;
+                }
+            }
+
+            ensureCapacity(count + 1);
+            final int index = count++;
+            parent[index] = parentIndex;
+            firstChild[index] = NONE;
+            lastChild[index] = NONE;
+            nextSibling[index] = NONE;
+            nameOffset[index] = offset;
+            nameLength[index] = length;
+            sizes[index] = size;
+            if (isDirectory) {
+                directoryFlags[index >>> 6] |= 1L << index;
+            }
+
+            if (parentIndex != NONE) {
+                if (lastChild[parentIndex] == NONE) {
+                    firstChild[parentIndex] = index;
+                } else {
+                    nextSibling[lastChild[parentIndex]] = index;
+                }
+                lastChild[parentIndex] = index;
+                insertChild(index);
+            }
+            sizesAreStale = true;
+            return index;
+        }
+
+        // Returns the arena offset of the name in the upper and its byte length in the lower 32 bits,
+        // storing the name in the arena if it is not there yet
+        protected long intern(String name) {
+            final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int slot = findName(bytes);
+            if (nameTableOffsets[slot] == 0) {
+                if (nameArenaSize + bytes.length > nameArena.length) {
+                    nameArena = Arrays.copyOf(nameArena, Math.max(nameArenaSize + bytes.length, nameArena.length * 2));
+                }
+                System.arraycopy(bytes, 0, nameArena, nameArenaSize, bytes.length);
+                if (2 * (distinctNames + 1) > nameTableOffsets.length) {
+                    growNameTable();
+                    slot = findName(bytes);
+                }
+                nameTableOffsets[slot] = nameArenaSize + 1;
+                nameTableLengths[slot] = bytes.length;
+                nameArenaSize += bytes.length;
+                distinctNames++;
+            }
+            return ((long) (nameTableOffsets[slot] - 1) << 32) | nameTableLengths[slot];
+        }
+
+        protected static int hashName(byte[] bytes, int offset, int length) {
+            int h = 0;
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        // Slot holding the name, or the empty slot where it would be inserted
+        protected int findName(byte[] bytes) {
+            final int mask = nameTableOffsets.length - 1;
+            int slot = hashName(bytes, 0, bytes.length) & mask;
+            while (nameTableOffsets[slot] != 0) {
+                if (nameTableLengths[slot] == bytes.length
+                        && Arrays.equals(nameArena, nameTableOffsets[slot] - 1, nameTableOffsets[slot] - 1 + bytes.length,
+                                bytes, 0, bytes.length)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        protected void growNameTable() {
+            final int[] oldOffsets = nameTableOffsets;
+            final int[] oldLengths = nameTableLengths;
+            nameTableOffsets = new int[oldOffsets.length * 2];
+            nameTableLengths = new int[oldLengths.length * 2];
+            final int mask = nameTableOffsets.length - 1;
+            for (int i = 0; i < oldOffsets.length; i++) {
+                if (oldOffsets[i] != 0) {
+                    int slot = hashName(nameArena, oldOffsets[i] - 1, oldLengths[i]) & mask;
+                    while (nameTableOffsets[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    nameTableOffsets[slot] = oldOffsets[i];
+                    nameTableLengths[slot] = oldLengths[i];
+                }
+            }
+        }
+
+        protected static int hash(int parentIndex, int offset) {
+            final int h = parentIndex * 0x9E3779B9 + offset * 0x85EBCA6B;
+            return h ^ (h >>> 16);
+        }
+
+        // Names are compared by offset and length, an empty name shares its offset with the next name interned
+        protected int findChild(int parentIndex, int offset, int length) {
+            final int mask = childTable.length - 1;
+            for (int slot = hash(parentIndex, offset) & mask; childTable[slot] != 0; slot = (slot + 1) & mask) {
+                final int index = childTable[slot] - 1;
+                if (parent[index] == parentIndex && nameOffset[index] == offset && nameLength[index] == length) {
+                    return index;
+                }
+            }
+            return NONE;
+        }
+
+        protected void insertChild(int index) {
+            if (2 * count > childTable.length) {
+                int[] oldTable = childTable;
+                childTable = new int[oldTable.length * 2];
+                for (int entry : oldTable) {
+                    if (entry != 0) {
+                        insertChild(entry - 1);
+                    }
+                }
+            }
+            final int mask = childTable.length - 1;
+            int slot = hash(parent[index], nameOffset[index]) & mask;
+            while (childTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            childTable[slot] = index + 1;
+        }
+
+        protected void ensureCapacity(int capacity) {
+            if (capacity <= parent.length) {
+                return;
+            }
+            final int newCapacity = Math.max(capacity, parent.length * 2);
+            parent = Arrays.copyOf(parent, newCapacity);
+            firstChild = Arrays.copyOf(firstChild, newCapacity);
+            lastChild = Arrays.copyOf(lastChild, newCapacity);
+            nextSibling = Arrays.copyOf(nextSibling, newCapacity);
+            nameOffset = Arrays.copyOf(nameOffset, newCapacity);
+            nameLength = Arrays.copyOf(nameLength, newCapacity);
+            sizes = Arrays.copyOf(sizes, newCapacity);
+            directoryFlags = Arrays.copyOf(directoryFlags, (newCapacity + 63) >>> 6);
+        }
+
+        // Children always follow their parent, so one sweep from the last entry to the first totals every subtree
+        public CompactFileSystem computeSubtreeSizes() {
+            if (!sizesAreStale) {
+                return this;
+            }
+            subtreeSizes = Arrays.copyOf(sizes, count);
+            for (int i = count - 1; i > ROOT; i--) {
+                subtreeSizes[parent[i]] += subtreeSizes[i];
+            }
+            sizesAreStale = false;
+            return this;
+        }
+
+        public long getSizeOfChildren(int index) {
+            if (!isDirectory(index)) {
+                throw new RuntimeException("A file can not have any children");
+            }
+            return computeSubtreeSizes().subtreeSizes[index];
+        }
+
+        // Sizes of all directories below the root within the range, matching DirectoryFilter on the root
+        public LongStream getDirectorySizesInRange(long sizeRangeStart, long sizeRangeEnd) {
+            computeSubtreeSizes();
+            return IntStream.range(ROOT + 1, count)
+                    .filter(this::isDirectory)
+                    .mapToLong(i -> subtreeSizes[i])
+                    .filter(size -> size >= sizeRangeStart && size <= sizeRangeEnd);
+        }
+
+        public FileSystemEntity getEntity(int index) {
+            return new EntityView(index);
+        }
+
+        protected class EntityView implements FileSystemEntity {
+            protected int index;
+
+            protected EntityView(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public boolean isFile() {
+                return !CompactFileSystem.this.isDirectory(index);
+            }
+
+            @Override
+            public boolean isDirectory() {
+                return CompactFileSystem.this.isDirectory(index);
+            }
+
+            @Override
+            public long getSize() {
+                return sizes[index];
+            }
+
+            @Override
+            public FileSystemEntity setSize(long size) {
+                sizes[index] = size;
+                sizesAreStale = true;
+                return this;
+            }
+
+            @Override
+            public String getName() {
+                return CompactFileSystem.this.getName(index);
+            }
+
+            @Override
+            public FileSystemEntity setName(String name) {
+                throw new RuntimeException("Entries of a CompactFileSystem can not be renamed");
+            }
+
+            @Override
+            public FileSystemEntity setParent(FileSystemEntity parent) {
+                throw new RuntimeException("Entries of a CompactFileSystem can not be moved");
+            }
+
+            @Override
+            public FileSystemEntity getParent() {
+                return parent[index] == NONE ? null : new EntityView(parent[index]);
+            }
+
+            @Override
+            public ArrayList<FileSystemEntity> getChildren() {
+                ArrayList<FileSystemEntity> children = new ArrayList<>();
+                for (int child = firstChild[index]; child != NONE; child = nextSibling[child]) {
+                    children.add(new EntityView(child));
+                }
+                return children;
+            }
+
+            @Override
+            public FileSystemEntity addChild(FileSystemEntity entity) {
+                if (isFile()) {
+                    throw new RuntimeException("A file can not have any children");
+                }
+                if (entity.isDirectory()) {
+                    addDirectory(index, entity.getName());
+                } else {
+                    addFile(index, entity.getName(), entity.getSize());
+                }
+                return this;
+            }
+
+            @Override
+            public long getSizeOfChildren() {
+                return CompactFileSystem.this.getSizeOfChildren(index);
+            }
+        }
+    }
+
+    public static class CompactCommandLineInterface extends CommandLineInterface {
+        protected CompactFileSystem fileSystem;
+        protected int workingIndex;
+
+        public CompactCommandLineInterface(CompactFileSystem fileSystem) {
+            super(null);
+            this.fileSystem = fileSystem;
+            this.workingIndex = fileSystem.getRootIndex();
+        }
+
+        public CompactFileSystem getFileSystem() {
+            return fileSystem;
         }
 
-        protected Matcher getMatchForPattern(String command) {
-            for (Pattern pattern: patterns) {
-                Matcher matcher = pattern.matcher(command);
-                if (matcher.find()) {
-                    return matcher;
+        @Override
+        protected void handleDirectoryChange(String directoryName) {
+            if (directoryName.equals("/")) {
+                workingIndex = fileSystem.getRootIndex();
+            } else if (directoryName.equals("..")) {
+                workingIndex = fileSystem.getParentIndex(workingIndex);
+            } else {
+                final int child = fileSystem.getChildIndex(workingIndex, directoryName);
+                if (child != CompactFileSystem.NONE && fileSystem.isDirectory(child)) {
+                    workingIndex = child;
                 }
             }
-            return null;
+        }
+
+        @Override
+        protected void handleFileRecord(long fileSize, String fileName) {
+            fileSystem.addFile(workingIndex, fileName, fileSize);
+        }
+
+        @Override
+        protected void handleDirectoryRecord(String directoryName) {
+            fileSystem.addDirectory(workingIndex, directoryName);
         }
     }
 
+    public static class DirectorySizeIndex {
+        protected long[] sortedSizes;
+
+        // prefixSums[i] is the sum of the i smallest sizes
+        protected long[] prefixSums;
+
+        public DirectorySizeIndex(LongStream sizes) {
+            sortedSizes = sizes.sorted().toArray();
+            prefixSums = new long[sortedSizes.length + 1];
+            for (int i = 0; i < sortedSizes.length; i++) {
+                prefixSums[i + 1] = prefixSums[i] + sortedSizes[i];
+            }
+        }
+
+        // Indexes every directory below root, the same set DirectoryFilter walks
+        public static DirectorySizeIndex of(Directory root) {
+            LongStream.Builder sizes = LongStream.builder();
+            ArrayDeque<Directory> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                for (FileSystemEntity child : pending.pop().getChildren()) {
+                    if (child instanceof Directory) {
+                        sizes.add(child.getSizeOfChildren());
+                        pending.push((Directory) child);
+                    }
+                }
+            }
+            return new DirectorySizeIndex(sizes.build());
+        }
+
+        public static DirectorySizeIndex of(CompactFileSystem fileSystem) {
+            return new DirectorySizeIndex(fileSystem.getDirectorySizesInRange(Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+
+        public int size() {
+            return sortedSizes.length;
+        }
+
+        // Index of the first size that is >= size
+        protected int lowerBound(long size) {
+            int lo = 0;
+            int hi = sortedSizes.length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (sortedSizes[mid] < size) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // Index of the first size that is > size
+        protected int upperBound(long size) {
+            return size == Long.MAX_VALUE ? sortedSizes.length : lowerBound(size + 1);
+        }
+
+        public long sumOfSizesAtMost(long size) {
+            return prefixSums[upperBound(size)];
+        }
+
+        public long sumOfSizesInRange(long sizeRangeStart, long sizeRangeEnd) {
+            if (sizeRangeStart > sizeRangeEnd) {
+                return 0;
+            }
+            return prefixSums[upperBound(sizeRangeEnd)] - prefixSums[lowerBound(sizeRangeStart)];
+        }
+
+        public int countOfSizesInRange(long sizeRangeStart, long sizeRangeEnd) {
+            if (sizeRangeStart > sizeRangeEnd) {
+                return 0;
+            }
+            return upperBound(sizeRangeEnd) - lowerBound(sizeRangeStart);
+        }
+
+        public OptionalLong smallestSizeAtLeast(long size) {
+            final int idx = lowerBound(size);
+            return idx < sortedSizes.length ? OptionalLong.of(sortedSizes[idx]) : OptionalLong.empty();
+        }
+
+        // The k largest sizes in descending order
+        public long[] largestSizes(int k) {
+            final int n = Math.min(k, sortedSizes.length);
+            long[] largest = new long[n];
+            for (int i = 0; i < n; i++) {
+                largest[i] = sortedSizes[sortedSizes.length - 1 - i];
+            }
+            return largest;
+        }
+    }
+
+    protected static void printParts(long totalSize, DirectorySizeIndex sizeIndex) {
+        // Part 1
+        System.out.println("Part 1: " + sizeIndex.sumOfSizesInRange(0, 100000));
+
+        // Part 2
+        final long TOTAL_SPACE  = 70000000;
+        final long TOTAL_UNUSED_SPACE_NEEDED = 30000000;
+        long neededSpace = TOTAL_UNUSED_SPACE_NEEDED - (TOTAL_SPACE - totalSize);
+        OptionalLong dirToDeleteSize = sizeIndex.smallestSizeAtLeast(neededSpace);
+        System.out.println("Part 2: " + dirToDeleteSize.getAsLong());
+    }
+
     public static void main(String[] args) {
-        Directory root = (Directory) new Directory().setName("/");
-        Directory currentDirectory = root;
+        // Optional --compact argument loads the listing into a CompactFileSystem instead of Directory objects,
+        // --workers n loads it without incremental size updates and sums all sizes afterwards with n workers
+        final boolean compact = args.length > 1 && args[1].equals("--compact");
+        final int workers = args.length > 2 && args[1].equals("--workers") ? Integer.parseInt(args[2]) : 0;
+
         try (Stream<String> stringStream = Files.lines(Paths.get(args[0]))) {
-            for (Iterator<String> it = stringStream.iterator(); it.hasNext(); ) {
-                String command = it.next();
-                currentDirectory = (new CommandLineInterface(root, currentDirectory, command)).getWorkingDirectory();
-            }
-
-            // Part 1
-            ArrayList<FileSystemEntity> result = new DirectoryFilter(root)
-                    .filterDirectoriesBySize(0, 100000)
-                    .getFilterResult();
-
-            int sum = result.stream().mapToInt(dir -> dir.getSizeOfChildren()).sum();
-            System.out.println("Part 1: " + sum);
-
-            // Part 2
-            final int TOTAL_SPACE  = 70000000;
-            final int TOTAL_UNUSED_SPACE_NEEDED = 30000000;
-            int neededSpace = TOTAL_UNUSED_SPACE_NEEDED - (TOTAL_SPACE - root.getSizeOfChildren());
-            OptionalInt dirToDeleteSize = new DirectoryFilter(root)
-                    .filterDirectoriesBySize(neededSpace, Integer.MAX_VALUE)
-                    .getFilterResult()
-                    .stream()
-                    .mapToInt(dir -> dir.getSizeOfChildren()).min();
-            System.out.println("Part 2: " + dirToDeleteSize.getAsInt());
+            if (compact) {
+                CompactCommandLineInterface commandLineInterface = new CompactCommandLineInterface(new CompactFileSystem());
+                stringStream.forEachOrdered(commandLineInterface::execute);
+                CompactFileSystem fileSystem = commandLineInterface.getFileSystem();
+                printParts(fileSystem.getSizeOfChildren(fileSystem.getRootIndex()), DirectorySizeIndex.of(fileSystem));
+            } else {
+                Directory root = (Directory) new Directory().setName("/");
+                CommandLineInterface commandLineInterface = new CommandLineInterface(root).setDeferSizes(workers > 0);
+                stringStream.forEachOrdered(commandLineInterface::execute);
+                if (workers > 0) {
+                    ParallelSizeAggregator.aggregate(root, workers);
+                }
+                printParts(root.getSizeOfChildren(), DirectorySizeIndex.of(root));
+            }
         } catch (IOException e) {
             System.out.println(e.getMessage());
         }
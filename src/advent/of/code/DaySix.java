@@ -1,39 +1,334 @@
 package advent.of.code;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DaySix {
+    public static class SlidingWindow {
+        protected int n;
+
+        // Occurrences of each byte value within the last n bytes
+        protected int[] counts = new int[256];
+        protected byte[] window;
+        protected int windowIndex = 0;
+        protected int distinct = 0;
+        protected long position = 0;
+
+        public SlidingWindow(int n) {
+            if (n < 1 || n > 256) {
+                throw new RuntimeException("n should be in range 1-256, not " + n);
+            }
+            this.n = n;
+            this.window = new byte[n];
+        }
+
+        public SlidingWindow reset() {
+            Arrays.fill(counts, 0);
+            windowIndex = 0;
+            distinct = 0;
+            position = 0;
+            return this;
+        }
+
+        // Returns true when the last n accepted bytes are all different
+        public boolean accept(byte b) {
+            if (position >= n && --counts[window[windowIndex] & 0xFF] == 0) {
+                distinct--;
+            }
+            window[windowIndex] = b;
+            if (++windowIndex == n) {
+                windowIndex = 0;
+            }
+            if (counts[b & 0xFF]++ == 0) {
+                distinct++;
+            }
+            position++;
+            return distinct == n;
+        }
+
+        // Number of bytes accepted so far, which is the marker index when accept returned true
+        public long getPosition() {
+            return position;
+        }
+
+        public int getN() {
+            return n;
+        }
+    }
+
+    // Indices are one past the last character of a window of n distinct characters, a window ending on the
+    // last character of the signal counts like any other
     public static class DistinctSequenceFinder {
         int n;
 
+        protected SlidingWindow window;
+
         public DistinctSequenceFinder(int n) {
             this.n = n;
+            this.window = new SlidingWindow(n);
+        }
+
+        public int getFirstIndex(CharSequence signal) {
+            window.reset();
+            for (int i = 0; i < signal.length(); i++) {
+                if (window.accept(toByte(signal.charAt(i)))) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        public IntStream streamIndices(CharSequence signal) {
+            final SlidingWindow streamWindow = new SlidingWindow(n);
+            PrimitiveIterator.OfInt iterator = new PrimitiveIterator.OfInt() {
+                int i = 0;
+                int next = -1;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == -1 && i < signal.length()) {
+                        if (streamWindow.accept(toByte(signal.charAt(i++)))) {
+                            next = i;
+                        }
+                    }
+                    return next != -1;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    final int index = next;
+                    next = -1;
+                    return index;
+                }
+            };
+            return StreamSupport.intStream(
+                    Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.DISTINCT),
+                    false
+            );
         }
 
         public int[] getIndices(String signal) {
-            return IntStream.range(0, signal.length() - n)
-                    .filter(i -> {
-                        String nextN = signal.substring(i, i + n);
-                        return nextN.length() == nextN.chars().distinct().count();
-                    })
-                    .map(i -> i + n)
-                    .toArray();
+            return streamIndices(signal).toArray();
+        }
+
+        protected static byte toByte(char c) {
+            if (c > 0xFF) {
+                throw new RuntimeException("Signal should only contain single byte characters, not " + c);
+            }
+            return (byte) c;
         }
     }
 
-    public static void main(String[] args) {
-        IntStream.range(1, 3).forEach(partNumber -> {
-            try (Stream<String> stringStream = Files.lines(Paths.get(args[0]))) {
-                DistinctSequenceFinder sequenceFinder = new DistinctSequenceFinder(partNumber == 1 ? 4 : 14);
-                System.out.println("Part " + partNumber + ":");
-                stringStream.forEach(line -> System.out.println(sequenceFinder.getIndices(line)[0]));
+    public static class MappedMarkerScanner {
+        protected SlidingWindow[] windows;
+
+        // State of the line being scanned
+        protected List<long[]> result;
+        protected long[] markers;
+        protected int found;
+        protected boolean lineIsEmpty;
+
+        public MappedMarkerScanner(int... windowSizes) {
+            windows = new SlidingWindow[windowSizes.length];
+            for (int i = 0; i < windowSizes.length; i++) {
+                windows[i] = new SlidingWindow(windowSizes[i]);
+            }
+        }
+
+        // Returns, for every line of the file, the first marker offset within that line for each window size,
+        // or -1 where a window size has no marker in that line
+        public List<long[]> scan(FileChannel channel) throws IOException {
+            result = new ArrayList<>();
+            markers = newLine();
+            MappedByteScanner.scan(channel, 0, channel.size(), this::accept, this::endOfInput);
+            return result;
+        }
+
+        protected void accept(byte b) {
+            if (b == '\n') {
+                result.add(markers);
+                markers = newLine();
+                return;
+            }
+            if (b == '\r' || found == windows.length) {
+                // Every marker of this line is known, skip ahead to the next line
+                return;
+            }
+            lineIsEmpty = false;
+            for (int i = 0; i < windows.length; i++) {
+                if (markers[i] == -1 && windows[i].accept(b)) {
+                    markers[i] = windows[i].getPosition();
+                    found++;
+                }
+            }
+        }
+
+        protected void endOfInput() {
+            if (!lineIsEmpty) {
+                result.add(markers);
+            }
+        }
+
+        protected long[] newLine() {
+            found = 0;
+            lineIsEmpty = true;
+            for (SlidingWindow window : windows) {
+                window.reset();
+            }
+            long[] markers = new long[windows.length];
+            Arrays.fill(markers, -1);
+            return markers;
+        }
+    }
+
+    public static class ParallelMarkerSearch {
+        protected static final int CHUNKS_PER_WORKER = 4;
+        protected static final long MAX_CHUNK_SIZE = 1 << 30;
+        protected static final int CANCEL_CHECK_INTERVAL = 1 << 16;
+
+        protected FileChannel channel;
+        protected int workers;
+        protected int[] windowSizes;
+        protected int maxWindowSize;
+
+        public ParallelMarkerSearch(FileChannel channel, int workers, int... windowSizes) {
+            if (workers < 1) {
+                throw new RuntimeException("workers should be at least 1, not " + workers);
+            }
+            this.channel = channel;
+            this.workers = workers;
+            this.windowSizes = windowSizes;
+            this.maxWindowSize = Arrays.stream(windowSizes).max().orElse(1);
+        }
+
+        // Searches the single signal in bytes start to end of the file, returning the first marker offset
+        // relative to start for each window size, or -1 where a window size has no marker
+        public long[] search(long start, long end) {
+            final long length = end - start;
+            final long chunks = Math.max(
+                    Math.min(workers * CHUNKS_PER_WORKER, length),
+                    (length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE
+            );
+
+            AtomicLongArray firstMarkers = new AtomicLongArray(windowSizes.length);
+            for (int i = 0; i < windowSizes.length; i++) {
+                firstMarkers.set(i, Long.MAX_VALUE);
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                // Submitted in signal order, so chunks near the start are scanned first and later ones can be skipped
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (long chunk = 0; chunk < chunks; chunk++) {
+                    final long chunkStart = length * chunk / chunks;
+                    final long chunkEnd = length * (chunk + 1) / chunks;
+                    tasks.add(pool.submit(() -> scanChunk(start, chunkStart, chunkEnd, firstMarkers)));
+                }
+                tasks.forEach(ForkJoinTask::join);
+            } finally {
+                pool.shutdown();
+            }
+
+            long[] result = new long[windowSizes.length];
+            for (int i = 0; i < windowSizes.length; i++) {
+                result[i] = firstMarkers.get(i) == Long.MAX_VALUE ? -1 : firstMarkers.get(i);
+            }
+            return result;
+        }
+
+        // Scans the signal from n - 1 bytes before chunkStart, so windows that straddle the chunk edge are seen
+        protected void scanChunk(long signalStart, long chunkStart, long chunkEnd, AtomicLongArray firstMarkers) {
+            final long scanStart = Math.max(0, chunkStart - (maxWindowSize - 1));
+            SlidingWindow[] windows = new SlidingWindow[windowSizes.length];
+            boolean[] done = new boolean[windowSizes.length];
+            for (int i = 0; i < windowSizes.length; i++) {
+                windows[i] = new SlidingWindow(windowSizes[i]);
+            }
+            if (isCancelled(scanStart, done, firstMarkers)) {
+                return;
+            }
+
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, signalStart + scanStart, chunkEnd - scanStart);
             } catch (IOException e) {
-                System.out.println(e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+
+            for (long position = scanStart; position < chunkEnd; position++) {
+                final byte b = buffer.get();
+                for (int i = 0; i < windows.length; i++) {
+                    if (!done[i] && windows[i].accept(b)) {
+                        // The first marker of a chunk is the only one it can contribute
+                        firstMarkers.accumulateAndGet(i, position + 1, Math::min);
+                        done[i] = true;
+                    }
+                }
+                if ((position & (CANCEL_CHECK_INTERVAL - 1)) == 0 && isCancelled(scanStart, done, firstMarkers)) {
+                    return;
+                }
+            }
+        }
+
+        // A chunk can stop once, for every window size, it has its marker or can not beat the one already found
+        protected boolean isCancelled(long scanStart, boolean[] done, AtomicLongArray firstMarkers) {
+            for (int i = 0; i < windowSizes.length; i++) {
+                if (!done[i] && firstMarkers.get(i) > scanStart + windowSizes[i]) {
+                    return false;
+                }
             }
-        });
+            return true;
+        }
+    }
+
+    // End of a single signal file, without its trailing line break
+    protected static long getSignalEnd(FileChannel channel) throws IOException {
+        long end = channel.size();
+        ByteBuffer last = ByteBuffer.allocate(1);
+        while (end > 0) {
+            last.clear();
+            channel.read(last, end - 1);
+            if (last.get(0) != '\n' && last.get(0) != '\r') {
+                break;
+            }
+            end--;
+        }
+        return end;
+    }
+
+    public static void main(String[] args) {
+        try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+            // Optional second argument sets the number of workers, the whole file is then searched as one signal
+            final int workers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+            List<long[]> markers = workers > 1
+                    ? List.of(new ParallelMarkerSearch(channel, workers, 4, 14).search(0, getSignalEnd(channel)))
+                    : new MappedMarkerScanner(4, 14).scan(channel);
+            IntStream.range(1, 3).forEach(partNumber -> {
+                System.out.println("Part " + partNumber + ":");
+                markers.forEach(lineMarkers -> System.out.println(lineMarkers[partNumber - 1]));
+            });
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
     }
 }
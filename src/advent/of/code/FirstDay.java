@@ -1,12 +1,16 @@
 package advent.of.code;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.OptionalInt;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Scanner;
-import java.util.stream.IntStream;
 
 public class FirstDay {
     static class IntegerGroupAccumulator implements Iterator<Integer>, Iterable<Integer> {
@@ -45,54 +49,206 @@ public class FirstDay {
         }
     }
 
+    public static class ByteGroupSumReader implements PrimitiveIterator.OfLong {
+        protected static final long WINDOW_SIZE = 1 << 30;
+
+        protected FileChannel channel;
+        protected MappedByteBuffer buffer;
+        protected long bufferOffset;
+        protected long end;
+
+        protected long nextSum;
+        protected boolean hasPending = false;
+
+        public ByteGroupSumReader(FileChannel channel) throws IOException {
+            this(channel, 0, channel.size());
+        }
+
+        public ByteGroupSumReader(FileChannel channel, long start, long end) throws IOException {
+            this.channel = channel;
+            this.end = end;
+            map(start);
+        }
+
+        protected void map(long offset) throws IOException {
+            bufferOffset = offset;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, end - offset));
+        }
+
+        protected boolean hasRemaining() {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            final long offset = bufferOffset + buffer.limit();
+            if (offset >= end) {
+                return false;
+            }
+            try {
+                map(offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasPending) {
+                return true;
+            }
+
+            long sum = 0;
+            long value = 0;
+            boolean lineHasDigits = false;
+            boolean groupHasLines = false;
+
+            while (hasRemaining()) {
+                final byte b = buffer.get();
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    lineHasDigits = true;
+                } else if (b == '\n') {
+                    if (lineHasDigits) {
+                        sum += value;
+                        value = 0;
+                        lineHasDigits = false;
+                        groupHasLines = true;
+                    } else if (groupHasLines) {
+                        break;
+                    }
+                }
+            }
+
+            if (lineHasDigits) {
+                // The chunk ended in the middle of a line, its value still belongs to this group
+                sum += value;
+                groupHasLines = true;
+            }
+
+            nextSum = sum;
+            hasPending = groupHasLines;
+            return hasPending;
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasPending = false;
+            return nextSum;
+        }
+    }
+
     public static class TopFinder {
-        protected Integer[] topValues;
+        // Min-heap of the n largest values seen so far, the smallest of them sits at heap[0]
+        protected long[] heap;
+
+        protected int size = 0;
 
         protected int n;
 
-        public TopFinder(IntegerGroupAccumulator groupAccumulator, int n) {
+        protected long[] topValues;
+
+        public TopFinder(int n) {
             this.n = n;
-            topValues = new Integer[n];
+            heap = new long[n];
+        }
+
+        public TopFinder(PrimitiveIterator.OfLong groupSums, int n) {
+            this(n);
+
+            while (groupSums.hasNext()) {
+                offer(groupSums.nextLong());
+            }
+        }
+
+        public TopFinder(IntegerGroupAccumulator groupAccumulator, int n) {
+            this(n);
 
             for (Integer groupSumValue: groupAccumulator) {
-                OptionalInt topPosition = findPositionInTop(groupSumValue);
+                offer(groupSumValue);
+            }
+        }
 
-                if (topPosition.isPresent()) {
-                    insertToTopN(topPosition.getAsInt(), groupSumValue);
+        public TopFinder offer(long value) {
+            if (size < n) {
+                heap[size] = value;
+                siftUp(size++);
+                topValues = null;
+            } else if (n > 0 && value > heap[0]) {
+                heap[0] = value;
+                siftDown(0);
+                topValues = null;
+            }
+            return this;
+        }
+
+        private void siftUp(int i) {
+            final long value = heap[i];
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
                 }
+                heap[i] = heap[parent];
+                i = parent;
             }
+            heap[i] = value;
         }
 
-        private OptionalInt findPositionInTop(int value) {
-            return IntStream.range(0, n).filter((i) -> topValues[i] == null || value > topValues[i]).findFirst();
+        private void siftDown(int i) {
+            final long value = heap[i];
+            final int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (value <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = value;
         }
 
-        private void insertToTopN(int topPositionIndex, int value) {
-            // Shift existing values following topPositionIndex before inserting new value at topPositionIndex
-            IntStream.range(topPositionIndex + 1, n)
-                    .map(i -> n + topPositionIndex - i) // Iterate from n to topPositionIndex + 1
-                    .forEach((i) -> {
-                        topValues[i] = topValues[i - 1];
-                    });
+        public TopFinder merge(TopFinder other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.heap[i]);
+            }
+            return this;
+        }
 
-            // Insert new sum at topPositionIndex
-            topValues[topPositionIndex] = value;
+        protected long[] getTopValues() {
+            if (topValues == null) {
+                // Sorted in descending order, so index 0 holds the maximum
+                long[] sorted = Arrays.copyOf(heap, size);
+                Arrays.sort(sorted);
+                topValues = new long[size];
+                for (int i = 0; i < size; i++) {
+                    topValues[i] = sorted[size - 1 - i];
+                }
+            }
+            return topValues;
         }
 
-        public int getMaxValue(int n) {
-            return topValues[n];
+        public long getMaxValue(int n) {
+            return getTopValues()[n];
         }
 
-        public int sumOfTopValues() {
-            return Arrays.stream(topValues).reduce(
-                    0,
-                    (a, b) -> a + b
-            );
+        public long sumOfTopValues() {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += heap[i];
+            }
+            return sum;
         }
 
         @Override
         public String toString() {
-            return Arrays.stream(topValues).map(String::valueOf).reduce(
+            return Arrays.stream(getTopValues()).mapToObj(String::valueOf).reduce(
                     "",
                     (a, b) -> a + (a.equals("") ? "" : " + ") + b
             ) + " = " + sumOfTopValues();
@@ -100,18 +256,16 @@ public class FirstDay {
     }
 
     public static void main(String[] args) {
-        try {
-            TopFinder topOneFinder = new TopFinder(
-                    new IntegerGroupAccumulator(new Scanner(new File(args[0]))),
-                    1
-            );
-            TopFinder topThreeFinder = new TopFinder(
-                    new IntegerGroupAccumulator(new Scanner(new File(args[0]))),
-                    3
-            );
-            System.out.println("Part 1: " + topOneFinder.getMaxValue(0));
+        try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+            // Optional second argument sets the number of workers, the input is read sequentially by default
+            final int workers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+            TopFinder topThreeFinder = workers > 1
+                    ? new ChunkedFileReducer<TopFinder>(channel, workers, true)
+                            .reduce((c, start, end) -> new TopFinder(new ByteGroupSumReader(c, start, end), 3), TopFinder::merge)
+                    : new TopFinder(new ByteGroupSumReader(channel), 3);
+            System.out.println("Part 1: " + topThreeFinder.getMaxValue(0));
             System.out.println("Part 2: " + topThreeFinder);
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             System.out.println(e.getMessage());
         }
     }
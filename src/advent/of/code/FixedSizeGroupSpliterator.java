@@ -0,0 +1,67 @@
+package advent.of.code;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class FixedSizeGroupSpliterator<T> implements Spliterator<List<T>> {
+    protected List<T> items;
+    protected int groupSize;
+
+    // Element range still to be traversed, from always sits on a group boundary
+    protected int from;
+    protected int to;
+
+    public FixedSizeGroupSpliterator(List<T> items, int groupSize) {
+        this(items, groupSize, 0, items.size());
+    }
+
+    protected FixedSizeGroupSpliterator(List<T> items, int groupSize, int from, int to) {
+        if (groupSize < 1) {
+            throw new RuntimeException("groupSize should be at least 1, not " + groupSize);
+        }
+        this.items = items;
+        this.groupSize = groupSize;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static <T> Stream<List<T>> stream(List<T> items, int groupSize, boolean parallel) {
+        return StreamSupport.stream(new FixedSizeGroupSpliterator<>(items, groupSize), parallel);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super List<T>> action) {
+        if (from >= to) {
+            return false;
+        }
+        final int groupEnd = Math.min(from + groupSize, to);
+        action.accept(items.subList(from, groupEnd));
+        from = groupEnd;
+        return true;
+    }
+
+    @Override
+    public Spliterator<List<T>> trySplit() {
+        final long groups = estimateSize();
+        if (groups < 2) {
+            return null;
+        }
+        final int mid = from + (int) (groups / 2) * groupSize;
+        FixedSizeGroupSpliterator<T> prefix = new FixedSizeGroupSpliterator<>(items, groupSize, from, mid);
+        from = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return ((long) to - from + groupSize - 1) / groupSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+}
@@ -0,0 +1,32 @@
+package advent.of.code;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class MappedByteScanner {
+    protected static final long WINDOW_SIZE = 1 << 30;
+
+    @FunctionalInterface
+    public interface ByteConsumer {
+        void accept(byte b);
+    }
+
+    // Feeds every byte from start to end to consumer, mapping at most WINDOW_SIZE bytes at a time. The consumer keeps
+    // its parser state across windows, so a line may start in one window and end in the next. endOfInput runs once
+    // after the last byte, e.g. to finish a last line without a trailing line break
+    public static void scan(FileChannel channel, long start, long end, ByteConsumer consumer, Runnable endOfInput)
+            throws IOException {
+        for (long offset = start; offset < end; offset += WINDOW_SIZE) {
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    offset,
+                    Math.min(WINDOW_SIZE, end - offset)
+            );
+            while (buffer.hasRemaining()) {
+                consumer.accept(buffer.get());
+            }
+        }
+        endOfInput.run();
+    }
+}
@@ -1,8 +1,9 @@
 package advent.of.code;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class SecondDay {
     public static class Game {
@@ -62,26 +63,160 @@ public class SecondDay {
         }
     }
 
-    public static void main(String[] args) {
-        try {
-            int totalScorePart1 = Files.lines(Paths.get(args[0]))
-                    .map(line -> line.split("\\s"))
-                    .map(moves -> new Game(moves[0], moves[1]))
-                    .map(Game::getYourScore)
-                    .reduce(0, (a, b) -> a + b);
-
-            System.out.println("Part 1: " + totalScorePart1);
-
-            int totalScorePart2 = Files.lines(Paths.get(args[0]))
-                    .map(line -> line.split("\\s"))
-                    .map(moves -> new Game(moves[0], moves[1]))
-                    .map(game -> {
+    public static class ScoreTable {
+        // Scores indexed by 3 * opponentsMove + yourMove, both moves counted from 0
+        public static final int[] PART_ONE_SCORES = buildTable(false);
+        public static final int[] PART_TWO_SCORES = buildTable(true);
+
+        protected static int[] buildTable(boolean yourMoveAsExpected) {
+            int[] table = new int[9];
+            for (int opponentsMove = 0; opponentsMove < 3; opponentsMove++) {
+                for (int yourMove = 0; yourMove < 3; yourMove++) {
+                    Game game = new Game(
+                            String.valueOf((char) ('A' + opponentsMove)),
+                            String.valueOf((char) ('X' + yourMove))
+                    );
+                    if (yourMoveAsExpected) {
                         game.setYourMoveAsExpected();
-                        return game.getYourScore();
-                    })
-                    .reduce(0, (a, b) -> a + b);
+                    }
+                    table[3 * opponentsMove + yourMove] = game.getYourScore();
+                }
+            }
+            return table;
+        }
+
+        public static int indexOf(byte opponentsMove, byte yourMove) {
+            final int opponentsMoveAsInt = opponentsMove - 'A';
+            final int yourMoveAsInt = yourMove - 'X';
+
+            if (opponentsMoveAsInt < 0 || opponentsMoveAsInt > 2) {
+                throw new RuntimeException("opponentsMove should be a A, B or C, not " + (char) opponentsMove);
+            }
+
+            if (yourMoveAsInt < 0 || yourMoveAsInt > 2) {
+                throw new RuntimeException("yourMove should be a X, Y or Z, not " + (char) yourMove);
+            }
+
+            return 3 * opponentsMoveAsInt + yourMoveAsInt;
+        }
+    }
+
+    public static class ByteStreamScorer {
+        protected long partOneScore = 0;
+        protected long partTwoScore = 0;
+
+        // Column within the current line, kept between calls to accept
+        protected int column = 0;
+        protected byte opponentsMove;
+        protected byte yourMove;
+
+        public ByteStreamScorer score(FileChannel channel) throws IOException {
+            return score(channel, 0, channel.size());
+        }
+
+        public ByteStreamScorer score(FileChannel channel, long start, long end) throws IOException {
+            MappedByteScanner.scan(channel, start, end, this::accept, this::endOfInput);
+            return this;
+        }
+
+        protected void accept(byte b) {
+            if (b == '\n') {
+                endOfLine();
+            } else if (b != '\r') {
+                switch (column++) {
+                    case 0:
+                        opponentsMove = b;
+                        break;
+                    case 1:
+                        if (b != ' ' && b != '\t') {
+                            throw new RuntimeException("opponentsMove should be a String of length 1");
+                        }
+                        break;
+                    case 2:
+                        yourMove = b;
+                        break;
+                    default:
+                        throw new RuntimeException("yourMove should be a String of length 1");
+                }
+            }
+        }
+
+        protected void endOfInput() {
+            if (column > 0) {
+                endOfLine();
+            }
+        }
+
+        protected void endOfLine() {
+            if (column != 3) {
+                throw new RuntimeException("Each round should be an opponentsMove and yourMove separated by a space");
+            }
+            column = 0;
+            onRound(ScoreTable.indexOf(opponentsMove, yourMove));
+        }
+
+        protected void onRound(int pairIndex) {
+            partOneScore += ScoreTable.PART_ONE_SCORES[pairIndex];
+            partTwoScore += ScoreTable.PART_TWO_SCORES[pairIndex];
+        }
 
-            System.out.println("Part 2: " + totalScorePart2);
+        public long getPartOneScore() {
+            return partOneScore;
+        }
+
+        public long getPartTwoScore() {
+            return partTwoScore;
+        }
+    }
+
+    public static class PairHistogram extends ByteStreamScorer {
+        protected long[] counts = new long[9];
+
+        @Override
+        protected void onRound(int pairIndex) {
+            counts[pairIndex]++;
+        }
+
+        public PairHistogram merge(PairHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            return this;
+        }
+
+        public long getCount(int pairIndex) {
+            return counts[pairIndex];
+        }
+
+        @Override
+        public long getPartOneScore() {
+            return scoreWith(ScoreTable.PART_ONE_SCORES);
+        }
+
+        @Override
+        public long getPartTwoScore() {
+            return scoreWith(ScoreTable.PART_TWO_SCORES);
+        }
+
+        protected long scoreWith(int[] scores) {
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                total += counts[i] * scores[i];
+            }
+            return total;
+        }
+    }
+
+    public static void main(String[] args) {
+        try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+            // Optional second argument sets the number of workers counting move pairs in parallel
+            final int workers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+            ByteStreamScorer scorer = workers > 1
+                    ? new ChunkedFileReducer<PairHistogram>(channel, workers)
+                            .reduce((c, start, end) -> (PairHistogram) new PairHistogram().score(c, start, end), PairHistogram::merge)
+                    : new ByteStreamScorer().score(channel);
+            System.out.println("Part 1: " + scorer.getPartOneScore());
+            System.out.println("Part 2: " + scorer.getPartTwoScore());
         } catch (IOException e) {
             System.out.println(e.getMessage());
         }
@@ -4,17 +4,58 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class ThirdDay {
     static public class Rucksack {
         protected String[] compartments = new String[] {"", ""};
 
+        // Item sets with bit p set for every item of priority p
+        protected long[] compartmentMasks = new long[] {0L, 0L};
+
         public Rucksack(String content) {
             int mid = content.length() / 2;
             compartments[0] = content.substring(0, mid);
             compartments[1] = content.substring(mid);
+            compartmentMasks[0] = getItemMask(content, 0, mid);
+            compartmentMasks[1] = getItemMask(content, mid, content.length());
+        }
+
+        public static long getItemMask(CharSequence items, int start, int end) {
+            long mask = 0L;
+            for (int i = start; i < end; i++) {
+                mask |= 1L << getItemPriority(items.charAt(i));
+            }
+            return mask;
+        }
+
+        public static char getItemOfPriority(int priority) {
+            return (char) (priority <= 26 ? 'a' + priority - 1 : 'A' + priority - 27);
+        }
+
+        public static int getPrioritySum(long mask) {
+            int sum = 0;
+            while (mask != 0) {
+                sum += Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+            }
+            return sum;
+        }
+
+        public static Stream<Character> getItems(long mask) {
+            return IntStream.range(1, 53)
+                    .filter(priority -> (mask & (1L << priority)) != 0)
+                    .mapToObj(Rucksack::getItemOfPriority);
+        }
+
+        public long getDuplicateItemMask() {
+            return compartmentMasks[0] & compartmentMasks[1];
+        }
+
+        public long getItemMask() {
+            return compartmentMasks[0] | compartmentMasks[1];
         }
 
         public static int getItemPriority(char item) {
@@ -28,16 +69,11 @@ public class ThirdDay {
         }
 
         public Stream<Character> getDuplicateItemsInCompartments() {
-            return compartments[0].chars()
-                    .mapToObj(c -> (char) c)
-                    .filter(item -> compartments[1].indexOf(item) != -1)
-                    .distinct();
+            return getItems(getDuplicateItemMask());
         }
 
         public Stream<Character> getUniqueItems() {
-            return (compartments[0] + compartments[1]).chars()
-                    .mapToObj(c -> (char) c)
-                    .distinct();
+            return getItems(getItemMask());
         }
 
         @Override
@@ -67,20 +103,20 @@ public class ThirdDay {
             return groupOfSize;
         }
 
-        public static Stream<Character> getItemsOccurringInAllGroupMembers(List<Rucksack> group) {
-            HashMap<Character, Integer> intersection = new HashMap<>();
+        public static long getItemMaskOfAllGroupMembers(List<Rucksack> group) {
+            if (group.isEmpty()) {
+                return 0L;
+            }
 
+            long intersection = -1L;
             for (Rucksack rucksack: group) {
-                rucksack.getUniqueItems().forEach((item) -> {
-                    if (intersection.containsKey(item)) {
-                        intersection.put(item, intersection.get(item) + 1);
-                    } else {
-                        intersection.put(item, 1);
-                    }
-                });
+                intersection &= rucksack.getItemMask();
             }
+            return intersection;
+        }
 
-            return intersection.keySet().stream().filter(item -> intersection.get(item) == group.size());
+        public static Stream<Character> getItemsOccurringInAllGroupMembers(List<Rucksack> group) {
+            return Rucksack.getItems(getItemMaskOfAllGroupMembers(group));
         }
 
         @Override
@@ -91,29 +127,22 @@ public class ThirdDay {
 
     public static void main(String[] args) {
         try {
-            int partOneSum = Files.lines(Paths.get(args[0]))
+            List<Rucksack> rucksacks = Files.readAllLines(Paths.get(args[0])).parallelStream()
                     .map(Rucksack::new)
-                    .map(Rucksack::getDuplicateItemsInCompartments)
-                    .map(dupes -> dupes.map(Rucksack::getItemPriority).reduce(0, (a, b) -> a + b))
-                    .reduce(0, (a, b) -> a + b);
-
-            System.out.println("Part 1: " + partOneSum);
+                    .collect(Collectors.toList());
 
+            int partOneSum = rucksacks.parallelStream()
+                    .mapToInt(rucksack -> Rucksack.getPrioritySum(rucksack.getDuplicateItemMask()))
+                    .sum();
 
-            Iterator<Rucksack> rucksackIterator = Files.lines(Paths.get(args[0])).map(Rucksack::new).iterator();
-            RucksackGroups groups = new RucksackGroups(rucksackIterator, 3);
-
-            Stream<List<Rucksack>> groupsStream = StreamSupport.stream(
-                    Spliterators.spliteratorUnknownSize(groups, Spliterator.ORDERED),
-                    false
-            );
+            System.out.println("Part 1: " + partOneSum);
 
-            int partTwoSunV2 = groupsStream
-                    .map(RucksackGroups::getItemsOccurringInAllGroupMembers)
-                    .map(items -> items.map(Rucksack::getItemPriority).reduce(0, (a, b) -> a + b))
-                    .reduce(0, (a, b) -> a + b);
+            int partTwoSum = FixedSizeGroupSpliterator.stream(rucksacks, 3, true)
+                    .mapToLong(RucksackGroups::getItemMaskOfAllGroupMembers)
+                    .mapToInt(Rucksack::getPrioritySum)
+                    .sum();
 
-            System.out.println("Part 2: " + partTwoSunV2);
+            System.out.println("Part 2: " + partTwoSum);
         } catch (IOException e) {
             System.out.println(e.getMessage());
         }